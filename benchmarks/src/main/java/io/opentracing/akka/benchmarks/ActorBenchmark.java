@@ -0,0 +1,146 @@
+package io.opentracing.akka.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.akka.TracedAbstractActor;
+import io.opentracing.akka.TracedMessage;
+
+/**
+ * Measures {@code tell} and {@code ask} round trips against a plain
+ * {@link AbstractActor} and a {@link TracedAbstractActor} receiving
+ * {@link TracedMessage}-wrapped messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActorBenchmark {
+    static final int BATCH = 1000;
+    static final FiniteDuration TIMEOUT = Duration.create(10, "seconds");
+    static final Object PAYLOAD = "payload";
+
+    @Param({"plain", "traced", "tracedNoop"})
+    String mode;
+
+    ActorSystem system;
+    ActorRef actor;
+    Tracer tracer;
+    Span span;
+    Timeout timeout = new Timeout(TIMEOUT);
+
+    static class PlainActor extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .match(CountDownLatch.class, latch -> latch.countDown())
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    static class TracedActor extends TracedAbstractActor {
+        public TracedActor(Tracer tracer) {
+            super(tracer);
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .match(CountDownLatch.class, latch -> latch.countDown())
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        system = ActorSystem.create("benchmark");
+
+        switch (mode) {
+            case "plain":
+                actor = system.actorOf(Props.create(PlainActor.class, () -> new PlainActor()));
+                return;
+            case "traced":
+                tracer = BenchmarkTracers.mock();
+                break;
+            case "tracedNoop":
+                tracer = BenchmarkTracers.noop();
+                break;
+            default:
+                throw new IllegalArgumentException("mode");
+        }
+
+        Tracer actorTracer = tracer;
+        actor = system.actorOf(Props.create(TracedActor.class, () -> new TracedActor(actorTracer)));
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        if (tracer != null)
+            span = tracer.buildSpan("sender").start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        if (span != null) {
+            span.finish();
+            span = null;
+        }
+
+        BenchmarkTracers.reset(tracer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception {
+        Await.result(system.terminate(), TIMEOUT);
+    }
+
+    Object wrap(Object message) {
+        return span == null ? message : TracedMessage.wrap(span, message);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void tell() throws Exception {
+        for (int i = 0; i < BATCH; i++)
+            actor.tell(wrap(PAYLOAD), ActorRef.noSender());
+
+        CountDownLatch latch = new CountDownLatch(1);
+        actor.tell(wrap(latch), ActorRef.noSender());
+        latch.await();
+    }
+
+    @Benchmark
+    public Object ask() throws Exception {
+        return Await.result(Patterns.ask(actor, wrap(PAYLOAD), timeout), TIMEOUT);
+    }
+}
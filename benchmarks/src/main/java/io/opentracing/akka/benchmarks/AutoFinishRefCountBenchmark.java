@@ -0,0 +1,60 @@
+package io.opentracing.akka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.opentracing.akka.AutoFinishScope;
+import io.opentracing.akka.AutoFinishScopeManager;
+import io.opentracing.noop.NoopSpan;
+
+/**
+ * Measures contention on the reference count shared by all the continuations of
+ * a single Span, as when it fans out to many parallel Futures: each operation
+ * captures a continuation of the shared {@link AutoFinishScope}, activates it and
+ * closes it.
+ *
+ * Run it with an increasing number of threads, e.g. {@code -t 1} through {@code -t 64}
+ * (or {@code --threads} with {@code BenchmarkRunner}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutoFinishRefCountBenchmark {
+    @Param({"ATOMIC", "STRIPED"})
+    AutoFinishScopeManager.RefCounting refCounting;
+
+    // Whether the owner Scope is still open, i.e. the striped counter is in striped mode.
+    @Param({"true", "false"})
+    boolean ownerOpen;
+
+    AutoFinishScope scope;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        scope = new AutoFinishScopeManager(refCounting).activate(NoopSpan.INSTANCE, false);
+        if (!ownerOpen) {
+            scope.capture(); // Keep the count above zero.
+            scope.close();
+        }
+    }
+
+    @Benchmark
+    public void captureActivateClose() {
+        scope.capture().activate().close();
+    }
+}
@@ -0,0 +1,177 @@
+package io.opentracing.akka.benchmarks;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in their declared modes (or the one passed with --mode) with the
+ * GC profiler enabled, and optionally saves the results as a baseline or compares them
+ * against a previously saved one, exiting with a non-zero status upon regressions.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar io.opentracing.akka.benchmarks.BenchmarkRunner \
+ *     [--include REGEX] [--mode thrpt|avgt|sample|ss] [--save FILE] [--baseline FILE]
+ *     [--threshold 0.10] [--threads N] [--quick]
+ * </pre>
+ *
+ * Results are keyed by mode. A result regresses when its throughput drops, its time
+ * per operation (other modes) grows, or its normalized allocation rate (bytes/op)
+ * grows, by more than the threshold.
+ */
+public final class BenchmarkRunner {
+    static final String SCORE_SUFFIX = ".score";
+    static final String ALLOC_SUFFIX = ".alloc";
+    static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    // Allocation deltas below this many bytes/op are considered noise.
+    static final double ALLOC_EPSILON = 8.0;
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        String include = "io\\.opentracing\\.akka\\..*Benchmark.*";
+        Mode mode = null;
+        String save = null;
+        String baseline = null;
+        double threshold = 0.10;
+        int threads = 0;
+        boolean quick = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--include":
+                    include = args[++i];
+                    break;
+                case "--mode":
+                    mode = Mode.deepValueOf(args[++i]);
+                    break;
+                case "--save":
+                    save = args[++i];
+                    break;
+                case "--baseline":
+                    baseline = args[++i];
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--quick":
+                    quick = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(include)
+            .addProfiler(GCProfiler.class);
+        if (mode != null) {
+            options.mode(mode);
+        }
+        if (threads > 0) {
+            options.threads(threads);
+        }
+        if (quick) {
+            options.warmupIterations(2).measurementIterations(3);
+        }
+
+        Properties current = toProperties(new Runner(options.build()).run());
+
+        if (save != null) {
+            try (OutputStream out = new FileOutputStream(save)) {
+                current.store(out, "opentracing-akka benchmark baseline");
+            }
+        }
+
+        if (baseline != null) {
+            Properties previous = new Properties();
+            try (InputStream in = new FileInputStream(baseline)) {
+                previous.load(in);
+            }
+
+            List<String> regressions = compare(previous, current, threshold);
+            for (String regression : regressions)
+                System.err.println("REGRESSION: " + regression);
+
+            if (!regressions.isEmpty())
+                System.exit(1);
+
+            System.out.println("No regressions against " + baseline);
+        }
+    }
+
+    static Properties toProperties(Collection<RunResult> results) {
+        Properties props = new Properties();
+        for (RunResult result : results) {
+            String key = key(result.getParams());
+            props.setProperty(key + SCORE_SUFFIX, Double.toString(result.getPrimaryResult().getScore()));
+
+            for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+                if (entry.getKey().endsWith(ALLOC_METRIC))
+                    props.setProperty(key + ALLOC_SUFFIX, Double.toString(entry.getValue().getScore()));
+            }
+        }
+
+        return props;
+    }
+
+    static String key(BenchmarkParams params) {
+        StringBuilder sb = new StringBuilder(params.getMode().shortLabel());
+        sb.append(':').append(params.getBenchmark());
+        for (String name : params.getParamsKeys())
+            sb.append(':').append(name).append('=').append(params.getParam(name));
+
+        return sb.toString();
+    }
+
+    static List<String> compare(Properties previous, Properties current, double threshold) {
+        List<String> regressions = new ArrayList<String>();
+
+        for (String name : new TreeSet<String>(current.stringPropertyNames())) {
+            String previousValue = previous.getProperty(name);
+            if (previousValue == null)
+                continue;
+
+            double before = Double.parseDouble(previousValue);
+            double after = Double.parseDouble(current.getProperty(name));
+
+            if (name.endsWith(SCORE_SUFFIX) && name.startsWith(Mode.Throughput.shortLabel() + ":")) {
+                // Throughput: higher is better.
+                if (after < before * (1 - threshold))
+                    regressions.add(String.format("%s dropped from %.3f to %.3f ops", name, before, after));
+            } else if (name.endsWith(SCORE_SUFFIX)) {
+                // Time per operation: lower is better.
+                if (after > before * (1 + threshold))
+                    regressions.add(String.format("%s grew from %.3f to %.3f per op", name, before, after));
+            } else if (name.endsWith(ALLOC_SUFFIX)) {
+                // Allocation: lower is better.
+                if (after > before * (1 + threshold) && after - before > ALLOC_EPSILON)
+                    regressions.add(String.format("%s grew from %.1f to %.1f bytes/op", name, before, after));
+            }
+        }
+
+        return regressions;
+    }
+}
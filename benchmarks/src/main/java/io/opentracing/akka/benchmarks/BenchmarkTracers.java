@@ -0,0 +1,44 @@
+package io.opentracing.akka.benchmarks;
+
+import io.opentracing.ScopeManager;
+import io.opentracing.Tracer;
+import io.opentracing.akka.AutoFinishScopeManager;
+import io.opentracing.akka.StackAutoFinishScopeManager;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.util.ThreadLocalScopeManager;
+
+/**
+ * Tracer setups shared by the benchmarks.
+ *
+ * The MockTracer instances keep every finished Span in memory, so benchmarks
+ * must call {@link #reset(Tracer)} between iterations.
+ */
+final class BenchmarkTracers {
+    private BenchmarkTracers() {}
+
+    static Tracer noop() {
+        return NoopTracerFactory.create();
+    }
+
+    static MockTracer mock() {
+        return mock(new ThreadLocalScopeManager());
+    }
+
+    static MockTracer autoFinish() {
+        return mock(new AutoFinishScopeManager());
+    }
+
+    static MockTracer autoFinishStack() {
+        return mock(new StackAutoFinishScopeManager());
+    }
+
+    static MockTracer mock(ScopeManager scopeManager) {
+        return new MockTracer(scopeManager, MockTracer.Propagator.TEXT_MAP);
+    }
+
+    static void reset(Tracer tracer) {
+        if (tracer instanceof MockTracer)
+            ((MockTracer)tracer).reset();
+    }
+}
@@ -0,0 +1,108 @@
+package io.opentracing.akka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.concurrent.ExecutionContext;
+
+import io.opentracing.Tracer;
+import io.opentracing.akka.TracedAutoFinishExecutionContext;
+import io.opentracing.akka.TracedExecutionContext;
+
+/**
+ * Measures the raw cost of a single {@code prepare()} + {@code execute()} cycle,
+ * which is what every Scala Future callback goes through.
+ *
+ * The wrapped ExecutionContext runs tasks on the calling thread, so the numbers
+ * only contain the wrapping, capture and activation overhead, and no thread hops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionContextBenchmark {
+    static final ExecutionContext CALLING_THREAD = ExecutionContext.fromExecutor(Runnable::run);
+
+    @Param({"plain", "traced", "tracedNoop", "tracedCreateSpans", "autoFinish", "autoFinishStack"})
+    String context;
+
+    Tracer tracer;
+    ExecutionContext ec;
+    io.opentracing.Scope scope;
+    long counter;
+
+    final Runnable task = new Runnable() {
+        @Override
+        public void run() {
+            counter++;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        switch (context) {
+            case "plain":
+                tracer = BenchmarkTracers.noop();
+                ec = CALLING_THREAD;
+                break;
+            case "traced":
+                tracer = BenchmarkTracers.mock();
+                ec = new TracedExecutionContext(CALLING_THREAD, tracer);
+                break;
+            case "tracedNoop":
+                tracer = BenchmarkTracers.noop();
+                ec = new TracedExecutionContext(CALLING_THREAD, tracer);
+                break;
+            case "tracedCreateSpans":
+                tracer = BenchmarkTracers.mock();
+                ec = new TracedExecutionContext(CALLING_THREAD, tracer, true);
+                break;
+            case "autoFinish":
+                tracer = BenchmarkTracers.autoFinish();
+                ec = new TracedAutoFinishExecutionContext(CALLING_THREAD, tracer);
+                break;
+            case "autoFinishStack":
+                tracer = BenchmarkTracers.autoFinishStack();
+                ec = new TracedAutoFinishExecutionContext(CALLING_THREAD, tracer);
+                break;
+            default:
+                throw new IllegalArgumentException("context");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        if (ec != CALLING_THREAD)
+            scope = tracer.buildSpan("parent").startActive(true);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        if (scope != null) {
+            scope.close();
+            scope = null;
+        }
+
+        BenchmarkTracers.reset(tracer);
+    }
+
+    @Benchmark
+    public long prepareAndExecute() {
+        ec.prepare().execute(task);
+        return counter;
+    }
+}
@@ -0,0 +1,156 @@
+package io.opentracing.akka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.dispatch.Futures;
+import akka.dispatch.Mapper;
+import akka.dispatch.OnComplete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import io.opentracing.Tracer;
+import io.opentracing.akka.TracedAutoFinishExecutionContext;
+import io.opentracing.akka.TracedExecutionContext;
+
+/**
+ * Measures {@code map} and {@code andThen}/{@code onComplete} chains running on
+ * real thread pools, including the thread hops (or lack of them, for Akka's
+ * batching dispatchers) between the chained callbacks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureChainBenchmark {
+    static final FiniteDuration TIMEOUT = Duration.create(10, "seconds");
+
+    static final Mapper<Integer, Integer> INCREMENT = new Mapper<Integer, Integer>() {
+        @Override
+        public Integer apply(Integer n) {
+            return n + 1;
+        }
+    };
+
+    static final OnComplete<Integer> NOOP_CALLBACK = new OnComplete<Integer>() {
+        @Override
+        public void onComplete(Throwable failure, Integer result) {
+        }
+    };
+
+    @Param({"plain", "traced", "tracedNoop", "autoFinish"})
+    String context;
+
+    @Param({"global", "akka"})
+    String dispatcher;
+
+    @Param({"1", "8"})
+    int depth;
+
+    ActorSystem system;
+    Tracer tracer;
+    ExecutionContext ec;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        ExecutionContext underlying;
+        if ("akka".equals(dispatcher)) {
+            system = ActorSystem.create("benchmark");
+            underlying = system.dispatcher();
+        } else {
+            underlying = ExecutionContext.global();
+        }
+
+        switch (context) {
+            case "plain":
+                tracer = null;
+                ec = underlying;
+                break;
+            case "traced":
+                tracer = BenchmarkTracers.mock();
+                ec = new TracedExecutionContext(underlying, tracer);
+                break;
+            case "tracedNoop":
+                tracer = BenchmarkTracers.noop();
+                ec = new TracedExecutionContext(underlying, tracer);
+                break;
+            case "autoFinish":
+                tracer = BenchmarkTracers.autoFinish();
+                ec = new TracedAutoFinishExecutionContext(underlying, tracer);
+                break;
+            default:
+                throw new IllegalArgumentException("context");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        BenchmarkTracers.reset(tracer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception {
+        if (system != null)
+            Await.result(system.terminate(), TIMEOUT);
+    }
+
+    @Benchmark
+    public Integer mapChain() throws Exception {
+        if (tracer == null)
+            return Await.result(map(), TIMEOUT);
+
+        Future<Integer> f;
+        try (io.opentracing.Scope scope = tracer.buildSpan("chain").startActive(true)) {
+            f = map();
+        }
+
+        return Await.result(f, TIMEOUT);
+    }
+
+    @Benchmark
+    public Integer onCompleteChain() throws Exception {
+        if (tracer == null)
+            return Await.result(andThen(), TIMEOUT);
+
+        Future<Integer> f;
+        try (io.opentracing.Scope scope = tracer.buildSpan("chain").startActive(true)) {
+            f = andThen();
+        }
+
+        return Await.result(f, TIMEOUT);
+    }
+
+    Future<Integer> map() {
+        Future<Integer> f = Futures.future(() -> 0, ec);
+        for (int i = 0; i < depth; i++)
+            f = f.map(INCREMENT, ec);
+
+        return f;
+    }
+
+    Future<Integer> andThen() {
+        Future<Integer> f = Futures.future(() -> 0, ec);
+        for (int i = 0; i < depth; i++)
+            f = f.andThen(NOOP_CALLBACK, ec);
+
+        return f;
+    }
+}
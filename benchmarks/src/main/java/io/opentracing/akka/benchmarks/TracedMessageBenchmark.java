@@ -0,0 +1,69 @@
+package io.opentracing.akka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.akka.TracedMessage;
+
+/**
+ * Measures the cost of wrapping a message with {@link TracedMessage#wrap(Span, Object)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TracedMessageBenchmark {
+    static final Object PAYLOAD = "payload";
+
+    @Param({"none", "noop", "mock"})
+    String span;
+
+    Tracer tracer;
+    Span activeSpan;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        switch (span) {
+            case "none":
+                break;
+            case "noop":
+                tracer = BenchmarkTracers.noop();
+                activeSpan = tracer.buildSpan("sender").start();
+                break;
+            case "mock":
+                tracer = BenchmarkTracers.mock();
+                activeSpan = tracer.buildSpan("sender").start();
+                break;
+            default:
+                throw new IllegalArgumentException("span");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        if (activeSpan != null)
+            activeSpan.finish();
+    }
+
+    @Benchmark
+    public Object wrap() {
+        return TracedMessage.wrap(activeSpan, PAYLOAD);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.akka;
+
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+
+/*
+ * Reference counting and continuation semantics shared by the AutoFinishScope managers,
+ * which only differ in how they keep track of the active Scope of each thread.
+ */
+abstract class AbstractAutoFinishScopeManager implements ScopeManager {
+    final AutoFinishScopeManager.RefCounting refCounting;
+    final ContinuationLeakDetector leakDetector;
+
+    AbstractAutoFinishScopeManager(AutoFinishScopeManager.RefCounting refCounting,
+            ContinuationLeakDetector leakDetector) {
+        if (refCounting == null)
+            throw new IllegalArgumentException("refCounting");
+
+        this.refCounting = refCounting;
+        this.leakDetector = leakDetector;
+    }
+
+    @Override
+    public AutoFinishScope activate(Span span, boolean finishOnClose) {
+        AutoFinishRefCount refCount = AutoFinishRefCount.create(refCounting);
+        if (leakDetector != null)
+            leakDetector.track(refCount, span);
+
+        return new AutoFinishScope(this, refCount, span, true);
+    }
+
+    @Override
+    public abstract AutoFinishScope active();
+
+    /*
+     * Makes the specified Scope the active one for the current thread, returning
+     * whatever state is needed to undo it in pop().
+     */
+    abstract Object push(AutoFinishScope scope);
+
+    /*
+     * Deactivates the specified Scope, returning false (and doing nothing) if it is
+     * not the active one for the current thread.
+     */
+    abstract boolean pop(AutoFinishScope scope, Object restore);
+}
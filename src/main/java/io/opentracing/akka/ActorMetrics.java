@@ -0,0 +1,152 @@
+package io.opentracing.akka;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.opentracing.Span;
+
+/**
+ * Per actor path histograms of the time {@link TracedMessage}s wait in the mailbox
+ * (from {@link TracedMessage#wrap(Object)} to the start of processing), and the
+ * time spent processing messages, recorded by {@link TracedAbstractActor}s created
+ * with an instance of this class.
+ *
+ * Entries are never removed, so actors with short-lived unique paths should
+ * not be measured.
+ *
+ * {@link TracedMessage}s only take their wrapping timestamp once an instance of this
+ * class has been created, as the queue time is not measured otherwise.
+ */
+public final class ActorMetrics {
+    final ConcurrentMap<String, Recorder> recorders = new ConcurrentHashMap<String, Recorder>();
+    final boolean tagSpans;
+    final FlightRecorder flightRecorder;
+
+    // Whether any instance exists, for TracedMessage to skip System.nanoTime() otherwise.
+    static volatile boolean enabled;
+
+    public ActorMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param tagSpans whether to tag the active Span with the actor path, queue and processing
+     *                 times (see {@link Constants}). As Spans may be sent to several actors, the
+     *                 last tagging actor wins.
+     */
+    public ActorMetrics(boolean tagSpans) {
+        this(tagSpans, null);
+    }
+
+    /**
+     * @param flightRecorder where each traced message processing is also recorded,
+     *                       or null to not record them.
+     */
+    public ActorMetrics(boolean tagSpans, FlightRecorder flightRecorder) {
+        this.tagSpans = tagSpans;
+        this.flightRecorder = flightRecorder;
+        enabled = true;
+    }
+
+    public boolean tagSpans() {
+        return tagSpans;
+    }
+
+    public FlightRecorder flightRecorder() {
+        return flightRecorder;
+    }
+
+    public Recorder recorder(String actorPath) {
+        if (actorPath == null)
+            throw new IllegalArgumentException("actorPath");
+
+        Recorder recorder = recorders.get(actorPath);
+        if (recorder == null) {
+            Recorder newRecorder = new Recorder(flightRecorder, actorPath);
+            recorder = recorders.putIfAbsent(actorPath, newRecorder);
+            if (recorder == null)
+                recorder = newRecorder;
+        }
+
+        return recorder;
+    }
+
+    public Map<String, Snapshot> snapshot() {
+        return snapshot(false);
+    }
+
+    public Map<String, Snapshot> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    public void reset() {
+        for (Recorder recorder : recorders.values()) {
+            recorder.queueTime.reset();
+            recorder.processingTime.reset();
+        }
+    }
+
+    Map<String, Snapshot> snapshot(boolean reset) {
+        Map<String, Snapshot> snapshots = new TreeMap<String, Snapshot>();
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            Recorder recorder = entry.getValue();
+            snapshots.put(entry.getKey(), reset
+                    ? new Snapshot(recorder.queueTime.snapshotAndReset(), recorder.processingTime.snapshotAndReset())
+                    : new Snapshot(recorder.queueTime.snapshot(), recorder.processingTime.snapshot()));
+        }
+
+        return snapshots;
+    }
+
+    public static final class Recorder {
+        final LatencyHistogram queueTime = new LatencyHistogram();
+        final LatencyHistogram processingTime = new LatencyHistogram();
+        final FlightRecorder flightRecorder;
+        final int pathId;
+
+        Recorder(FlightRecorder flightRecorder, String actorPath) {
+            this.flightRecorder = flightRecorder;
+            this.pathId = flightRecorder == null ? 0 : flightRecorder.nameId(actorPath);
+        }
+
+        public void recordQueueTime(long nanos) {
+            queueTime.record(nanos);
+        }
+
+        public void recordProcessingTime(long nanos) {
+            processingTime.record(nanos);
+        }
+
+        void recordReceive(Span span, Object message, long queueTime, long startTime, long endTime) {
+            if (flightRecorder != null)
+                flightRecorder.recordReceive(span, pathId, message, queueTime, startTime, endTime);
+        }
+    }
+
+    public static final class Snapshot {
+        final LatencyHistogram.Snapshot queueTime;
+        final LatencyHistogram.Snapshot processingTime;
+
+        Snapshot(LatencyHistogram.Snapshot queueTime, LatencyHistogram.Snapshot processingTime) {
+            this.queueTime = queueTime;
+            this.processingTime = processingTime;
+        }
+
+        /* Nanoseconds between wrapping and processing, for local TracedMessages only. */
+        public LatencyHistogram.Snapshot queueTime() {
+            return queueTime;
+        }
+
+        /* Nanoseconds spent processing messages, traced or not. */
+        public LatencyHistogram.Snapshot processingTime() {
+            return processingTime;
+        }
+
+        @Override
+        public String toString() {
+            return "queueTime[" + queueTime + "] processingTime[" + processingTime + "]";
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016-2017 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.akka;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/*
+ * Reference count shared by all the AutoFinishScopes of a given Span.
+ *
+ * The count starts at 1, held by the Scope created through AutoFinishScopeManager.activate()
+ * (the owner), and the Span is finished once it drops to zero.
+ */
+abstract class AutoFinishRefCount {
+    // Set right after creation, for the Spans sampled by a ContinuationLeakDetector.
+    ContinuationLeakDetector.Tracker tracker;
+
+    static AutoFinishRefCount create(AutoFinishScopeManager.RefCounting refCounting) {
+        switch (refCounting) {
+            case STRIPED:
+                // Nothing to spread across on a single processor.
+                return Striped.STRIPES > 1 ? new Striped() : new Atomic();
+            default:
+                return new Atomic();
+        }
+    }
+
+    void retain() {
+        retain(1);
+    }
+
+    /* Returns true if the last reference was released. */
+    boolean release() {
+        return release(1);
+    }
+
+    /* Takes the specified number of references at once. */
+    abstract void retain(int count);
+
+    /* Releases the specified number of references at once, returning true if they were the last ones. */
+    abstract boolean release(int count);
+
+    /* Releases the reference held by the owner Scope, returning true if it was the last one. */
+    boolean releaseOwner() {
+        return release();
+    }
+
+    /* Single shared counter. */
+    static final class Atomic extends AutoFinishRefCount {
+        final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        void retain(int count) {
+            this.count.addAndGet(count);
+        }
+
+        @Override
+        boolean release(int count) {
+            return this.count.addAndGet(-count) == 0;
+        }
+    }
+
+    /*
+     * Striped counter, in the spirit of the Linux kernel percpu_ref.
+     *
+     * While the owner Scope is open the count cannot reach zero, so there is no need to
+     * detect it: references are taken and dropped through a CAS on the central counter
+     * until the first contended update, and through per-thread stripes (padded to avoid
+     * false sharing) from then on, as LongAdder does. The central counter is biased meanwhile, so it never gets close
+     * to zero no matter how the references are spread across stripes.
+     *
+     * When the owner releases its reference, every stripe is retired (with a CAS, so each
+     * concurrent update is either accounted for in the reconciled sum or redirected to the
+     * central counter), and the sum is folded into the central counter along with the bias
+     * removal. From then on the central counter holds the exact count, and zero is detected
+     * exactly once by whoever brings it there.
+     */
+    static final class Striped extends AutoFinishRefCount {
+        static final long BIAS = 1L << 62;
+        static final long RETIRED = Long.MIN_VALUE;
+
+        // 16 longs = 128 bytes between stripes, covering adjacent cache line prefetching.
+        static final int PADDING = 16;
+        static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+        static final AtomicLongArray RETIRED_STRIPES = retiredStripes();
+
+        static final AtomicReferenceFieldUpdater<Striped, AtomicLongArray> STRIPES_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Striped.class, AtomicLongArray.class, "stripes");
+
+        final AtomicLong central = new AtomicLong(BIAS);
+        volatile AtomicLongArray stripes;
+        volatile boolean ownerReleased;
+
+        static int stripes(int processors) {
+            int n = 1;
+            while (n < processors && n < 64)
+                n <<= 1;
+
+            return n;
+        }
+
+        static AtomicLongArray retiredStripes() {
+            AtomicLongArray array = new AtomicLongArray(STRIPES * PADDING);
+            for (int i = 0; i < STRIPES; i++)
+                array.set(i * PADDING, RETIRED);
+
+            return array;
+        }
+
+        static int stripeIndex() {
+            return ((int)Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+        }
+
+        @Override
+        void retain(int count) {
+            if (!ownerReleased) {
+                if (stripes == null) {
+                    long value = central.get();
+                    if (central.compareAndSet(value, value + count))
+                        return;
+                }
+                if (addToStripe(count))
+                    return;
+            }
+
+            central.addAndGet(count);
+        }
+
+        @Override
+        boolean release(int count) {
+            if (!ownerReleased) {
+                if (stripes == null) {
+                    long value = central.get();
+                    // A stale read of ownerReleased may still land here after reconciliation.
+                    if (central.compareAndSet(value, value - count))
+                        return value - count == 0;
+                }
+                if (addToStripe(-count))
+                    return false;
+            }
+
+            return central.addAndGet(-count) == 0;
+        }
+
+        boolean addToStripe(long delta) {
+            AtomicLongArray array = stripes;
+            if (array == null) {
+                STRIPES_UPDATER.compareAndSet(this, null, new AtomicLongArray(STRIPES * PADDING));
+                array = stripes;
+            }
+
+            int index = stripeIndex();
+            for (;;) {
+                long value = array.get(index);
+                if (value == RETIRED)
+                    return false;
+                if (array.compareAndSet(index, value, value + delta))
+                    return true;
+            }
+        }
+
+        @Override
+        boolean releaseOwner() {
+            ownerReleased = true;
+
+            long sum = 0;
+            AtomicLongArray array = STRIPES_UPDATER.getAndSet(this, RETIRED_STRIPES);
+            if (array != null && array != RETIRED_STRIPES) {
+                for (int i = 0; i < STRIPES; i++) {
+                    int index = i * PADDING;
+                    long value;
+                    do {
+                        value = array.get(index);
+                    } while (!array.compareAndSet(index, value, RETIRED));
+
+                    sum += value;
+                }
+            }
+
+            // count = owner (1) + stripes + (central - BIAS), minus the owner reference.
+            return central.addAndGet(sum - BIAS) == 0;
+        }
+    }
+}
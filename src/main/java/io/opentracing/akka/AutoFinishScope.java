@@ -16,47 +16,135 @@ package io.opentracing.akka;
 import io.opentracing.Scope;
 import io.opentracing.Span;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
-class AutoFinishScope implements Scope {
-    final AutoFinishScopeManager manager;
-    final AtomicInteger refCount;
+/**
+ * {@link Scope} of an {@link AutoFinishScopeManager}, finishing its {@link Span} once
+ * it and all of its continuations have been closed.
+ */
+public final class AutoFinishScope implements Scope {
+    final AbstractAutoFinishScopeManager manager;
+    final AutoFinishRefCount refCount;
     private final Span wrapped;
-    private final AutoFinishScope toRestore;
+    private final boolean owner;
+
+    // State the manager needs to deactivate this Scope (e.g. the Scope to restore).
+    private final Object restore;
+
+    AutoFinishScope(AbstractAutoFinishScopeManager manager, AutoFinishRefCount refCount, Span wrapped) {
+        this(manager, refCount, wrapped, false);
+    }
 
-    AutoFinishScope(AutoFinishScopeManager manager, AtomicInteger refCount, Span wrapped) {
+    AutoFinishScope(AbstractAutoFinishScopeManager manager, AutoFinishRefCount refCount, Span wrapped, boolean owner) {
         this.manager = manager;
         this.refCount = refCount;
         this.wrapped = wrapped;
-        this.toRestore = manager.tlsScope.get();
-        manager.tlsScope.set(this);
+        this.owner = owner;
+        this.restore = manager.push(this);
     }
 
     public class Continuation {
         public Continuation() {
-            refCount.incrementAndGet();
+            retain();
+        }
+
+        public AutoFinishScope activate() {
+            return reactivate();
+        }
+    }
+
+    /**
+     * References reserved at once by {@link #capture(int)}, for fan-outs: each of them
+     * must be either activated, or released unused, exactly once.
+     */
+    public class ContinuationGroup {
+        final int count;
+
+        ContinuationGroup(int count) {
+            this.count = count;
+            retain(count);
+        }
+
+        public int count() {
+            return count;
         }
 
+        /* Activates one of the reserved references. */
         public AutoFinishScope activate() {
-            return new AutoFinishScope(manager, refCount, wrapped);
+            return reactivate();
+        }
+
+        /* Releases the specified number of unused references. */
+        public void release(int unused) {
+            if (unused > 0)
+                AutoFinishScope.this.release(unused);
+        }
+    }
+
+    /*
+     * Building blocks of Continuation, for callers embedding the captured
+     * state in their own objects instead of allocating a Continuation.
+     */
+    void retain() {
+        retain(1);
+    }
+
+    void release() {
+        release(1);
+    }
+
+    void retain(int count) {
+        refCount.retain(count);
+        if (refCount.tracker != null)
+            refCount.tracker.retained(count);
+    }
+
+    void release(int count) {
+        if (refCount.tracker != null)
+            refCount.tracker.released(count);
+        if (refCount.release(count))
+            finish();
+    }
+
+    void finish() {
+        if (refCount.tracker != null)
+            refCount.tracker.finished();
+
+        Object event = JfrEvents.beginSpanFinish();
+        try {
+            wrapped.finish();
+        } finally {
+            if (event != null)
+                JfrEvents.commitSpanFinish(event, wrapped);
         }
     }
 
+    AutoFinishScope reactivate() {
+        return new AutoFinishScope(manager, refCount, wrapped);
+    }
+
     public Continuation capture() {
         return new Continuation();
     }
 
+    /* Reserves the specified number of references with a single update of the reference count. */
+    public ContinuationGroup capture(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("count");
+
+        return new ContinuationGroup(count);
+    }
+
     @Override
     public void close() {
-        if (manager.tlsScope.get() != this) {
+        if (!manager.pop(this, restore)) {
             return;
         }
 
-        if (refCount.decrementAndGet() == 0) {
-            wrapped.finish();
+        if (owner) {
+            if (refCount.releaseOwner())
+                finish();
+        } else {
+            release();
         }
-
-        manager.tlsScope.set(toRestore);
     }
 
     @Override
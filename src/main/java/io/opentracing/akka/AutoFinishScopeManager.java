@@ -13,19 +13,48 @@
  */
 package io.opentracing.akka;
 
-import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 // Originally imported from
 // opentracing-java/opentracing-examples/src/test/java/io/opentracing/examples/
-public class AutoFinishScopeManager implements ScopeManager {
+public class AutoFinishScopeManager extends AbstractAutoFinishScopeManager {
+    /**
+     * Strategy used to count the references to each {@link Span}.
+     */
+    public enum RefCounting {
+        /**
+         * A single atomic counter per {@link Span}. Cheapest in memory and for
+         * moderate parallelism.
+         */
+        ATOMIC,
+
+        /**
+         * A counter spreading updates across per-thread stripes upon contention,
+         * reconciled once the {@link io.opentracing.Scope} created by
+         * {@link #activate(Span, boolean)} is closed. Meant for {@link Span}s fanning
+         * out to many parallel tasks while their original {@link io.opentracing.Scope}
+         * is still open (e.g. waiting for the results); afterwards it behaves like
+         * {@link #ATOMIC}.
+         */
+        STRIPED
+    }
+
     final ThreadLocal<AutoFinishScope> tlsScope = new ThreadLocal<AutoFinishScope>();
 
-    @Override
-    public AutoFinishScope activate(Span span, boolean finishOnClose) {
-        return new AutoFinishScope(this, new AtomicInteger(1), span);
+    public AutoFinishScopeManager() {
+        this(RefCounting.ATOMIC);
+    }
+
+    public AutoFinishScopeManager(RefCounting refCounting) {
+        this(refCounting, null);
+    }
+
+    /**
+     * @param leakDetector detector of Spans whose continuations are never activated,
+     *                     or null to not detect them.
+     */
+    public AutoFinishScopeManager(RefCounting refCounting, ContinuationLeakDetector leakDetector) {
+        super(refCounting, leakDetector);
     }
 
     @Override
@@ -33,4 +62,20 @@ public class AutoFinishScopeManager implements ScopeManager {
         return tlsScope.get();
     }
 
+    @Override
+    Object push(AutoFinishScope scope) {
+        AutoFinishScope toRestore = tlsScope.get();
+        tlsScope.set(scope);
+        return toRestore;
+    }
+
+    @Override
+    boolean pop(AutoFinishScope scope, Object restore) {
+        if (tlsScope.get() != scope)
+            return false;
+
+        tlsScope.set((AutoFinishScope)restore);
+        return true;
+    }
+
 }
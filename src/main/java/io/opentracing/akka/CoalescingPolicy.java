@@ -0,0 +1,44 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes {@link TracedAbstractActor} collapse consecutive messages of the same class,
+ * propagating the same Span, into a single {@link Constants#RECEIVE_OPERATION_NAME} summary
+ * child Span per time window (and up to a maximum number of messages, if set), tagged with
+ * their count and their minimum, maximum and total processing times.
+ *
+ * Each message costs two clock reads. Summaries are recorded once a message not fitting
+ * them arrives, their window elapses, or the actor stops.
+ */
+public final class CoalescingPolicy {
+    final long windowNanos;
+    final int maxCount;
+
+    public CoalescingPolicy(long window, TimeUnit unit) {
+        this(window, unit, 0);
+    }
+
+    /**
+     * @param maxCount messages per summary, or 0 for no limit.
+     */
+    public CoalescingPolicy(long window, TimeUnit unit, int maxCount) {
+        if (window <= 0)
+            throw new IllegalArgumentException("window");
+        if (unit == null)
+            throw new IllegalArgumentException("unit");
+        if (maxCount < 0)
+            throw new IllegalArgumentException("maxCount");
+
+        this.windowNanos = unit.toNanos(window);
+        this.maxCount = maxCount;
+    }
+
+    public long windowNanos() {
+        return windowNanos;
+    }
+
+    public int maxCount() {
+        return maxCount;
+    }
+}
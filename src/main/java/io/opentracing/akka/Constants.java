@@ -10,5 +10,41 @@ public final class Constants
 
     public static String ACTOR_PATH = "akka.actor.path";
 
+    public static String QUEUE_TIME = "akka.message.queue_time_ns";
+
+    public static String PROCESSING_TIME = "akka.message.processing_time_ns";
+
+    public static String MESSAGE_TYPE = "akka.message.type";
+
+    public static String COALESCED_COUNT = "akka.coalesced.count";
+
+    public static String COALESCED_MIN_TIME = "akka.coalesced.min_time_ns";
+
+    public static String COALESCED_MAX_TIME = "akka.coalesced.max_time_ns";
+
+    public static String COALESCED_TOTAL_TIME = "akka.coalesced.total_time_ns";
+
     public static String EXECUTE_OPERATION_NAME = "execute";
+
+    public static String RECEIVE_OPERATION_NAME = "receive";
+
+    public static String ASK_OPERATION_NAME = "ask";
+
+    public static String ASK_SENT_EVENT = "sent";
+
+    public static String ASK_TIMED_OUT = "akka.ask.timed_out";
+
+    public static String DEADLINE_BAGGAGE_ITEM = "akka.deadline";
+
+    public static String CHAIN_DEPTH_BAGGAGE_ITEM = "akka.chain_depth";
+
+    public static String SLOW_EXECUTION_EVENT = "slow_execution";
+
+    public static String SCHEDULING_DELAY = "akka.execute.scheduling_delay_ns";
+
+    public static String RUN_TIME = "akka.execute.run_time_ns";
+
+    public static String STREAM_ELEMENTS = "akka.stream.elements";
+
+    public static String LEAKED_CONTINUATIONS = "akka.leaked_continuations";
 }
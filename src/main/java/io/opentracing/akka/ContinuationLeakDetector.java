@@ -0,0 +1,140 @@
+package io.opentracing.akka;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.opentracing.Span;
+
+/**
+ * Detects Spans of an {@link AutoFinishScopeManager} that will never be finished, because
+ * some of their continuations were captured but never activated (e.g. callbacks of cancelled
+ * or dropped tasks).
+ *
+ * A sampled subset of the activated Spans is tracked through a {@link PhantomReference} to
+ * their reference count, which every Scope and continuation of the Span points to: once it
+ * is garbage collected without having dropped to zero, nothing is left to finish the Span.
+ * Continuations themselves are not tracked, so capturing them costs nothing extra.
+ *
+ * Collected reference counts are processed whenever a new Span is tracked, and by
+ * {@link #poll()} and the counters, so no thread is needed.
+ */
+public final class ContinuationLeakDetector {
+    public enum Action {
+        /* Only count the leak. */
+        REPORT,
+
+        /* Count the leak, and finish the Span tagged with the leaked continuations. */
+        FINISH
+    }
+
+    final double sampleRate;
+    final Action action;
+    final ReferenceQueue<AutoFinishRefCount> queue = new ReferenceQueue<AutoFinishRefCount>();
+    final Set<Tracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+    final LongAdder outstanding = new LongAdder();
+    final LongAdder leakedSpans = new LongAdder();
+    final LongAdder leakedContinuations = new LongAdder();
+
+    public ContinuationLeakDetector() {
+        this(0.01, Action.FINISH);
+    }
+
+    /**
+     * @param sampleRate fraction (0 to 1) of the activated Spans to track.
+     */
+    public ContinuationLeakDetector(double sampleRate, Action action) {
+        if (!(sampleRate >= 0 && sampleRate <= 1))
+            throw new IllegalArgumentException("sampleRate");
+        if (action == null)
+            throw new IllegalArgumentException("action");
+
+        this.sampleRate = sampleRate;
+        this.action = action;
+    }
+
+    /* Spans being tracked, i.e. sampled and not finished yet. */
+    public int trackedSpans() {
+        poll();
+        return trackers.size();
+    }
+
+    /* Continuations of the tracked Spans, captured and not closed yet. */
+    public long outstandingContinuations() {
+        poll();
+        return outstanding.sum();
+    }
+
+    public long leakedSpans() {
+        poll();
+        return leakedSpans.sum();
+    }
+
+    /* Continuations never closed, for the leaked Spans. */
+    public long leakedContinuations() {
+        poll();
+        return leakedContinuations.sum();
+    }
+
+    /* Processes the reference counts collected so far. */
+    public void poll() {
+        Reference<? extends AutoFinishRefCount> reference;
+        while ((reference = queue.poll()) != null) {
+            Tracker tracker = (Tracker)reference;
+            if (!trackers.remove(tracker))
+                continue;
+
+            int leaked = tracker.continuations.get();
+            outstanding.add(-leaked);
+            leakedSpans.increment();
+            leakedContinuations.add(leaked);
+
+            if (action == Action.FINISH) {
+                tracker.span.setTag(Constants.LEAKED_CONTINUATIONS, leaked);
+                tracker.span.finish();
+            }
+        }
+    }
+
+    void track(AutoFinishRefCount refCount, Span span) {
+        poll();
+
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)
+            return;
+
+        refCount.tracker = new Tracker(refCount, span);
+    }
+
+    /* Must not reference the reference count, nor anything pointing to it. */
+    final class Tracker extends PhantomReference<AutoFinishRefCount> {
+        final Span span;
+        final AtomicInteger continuations = new AtomicInteger();
+
+        Tracker(AutoFinishRefCount refCount, Span span) {
+            super(refCount, queue);
+            this.span = span;
+            trackers.add(this);
+        }
+
+        void retained(int count) {
+            continuations.addAndGet(count);
+            outstanding.add(count);
+        }
+
+        void released(int count) {
+            continuations.addAndGet(-count);
+            outstanding.add(-count);
+        }
+
+        void finished() {
+            trackers.remove(this);
+            clear();
+        }
+    }
+}
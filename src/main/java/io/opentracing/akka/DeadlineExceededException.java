@@ -0,0 +1,22 @@
+package io.opentracing.akka;
+
+/**
+ * Fails the Futures of {@link TracedFutures#future} tasks skipped by a {@link DeadlinePolicy},
+ * and is reported to the {@link scala.concurrent.ExecutionContext} of any other skipped task.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final long deadline;
+
+    public DeadlineExceededException(long deadline) {
+        // Thrown under overload: skip the stack trace.
+        super("Deadline exceeded: " + deadline, null, false, false);
+        this.deadline = deadline;
+    }
+
+    /* The exceeded deadline, in milliseconds since the epoch. */
+    public long deadline() {
+        return deadline;
+    }
+}
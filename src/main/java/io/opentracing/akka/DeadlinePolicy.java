@@ -0,0 +1,133 @@
+package io.opentracing.akka;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.DeadLetter;
+import scala.concurrent.ExecutionContext;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+/**
+ * Skips work whose deadline has passed, so callers that already gave up do not
+ * keep consuming capacity under overload.
+ *
+ * Deadlines are stored as a baggage item of the {@link Span}, in milliseconds since
+ * the epoch, so they travel wherever the Span is propagated (including
+ * {@link TracedMessage}s sent to remote systems), and are inherited by child Spans.
+ * They are checked by {@link TracedAbstractActor}, {@link TracedExecutionContext} and
+ * {@link TracedAutoFinishExecutionContext} when created with a DeadlinePolicy.
+ */
+public final class DeadlinePolicy {
+    /**
+     * What to do with expired messages. Expired tasks are always skipped, failing the
+     * Future of {@link TracedFutures#future} tasks with a {@link DeadlineExceededException},
+     * and reporting it to their ExecutionContext otherwise.
+     */
+    public enum Action {
+        /** Expired messages are silently skipped. */
+        DROP,
+
+        /** Expired messages are sent to the dead letters. */
+        DEAD_LETTER
+    }
+
+    final Action action;
+    final LongAdder expired = new LongAdder();
+
+    public DeadlinePolicy(Action action) {
+        if (action == null)
+            throw new IllegalArgumentException("action");
+
+        this.action = action;
+    }
+
+    public Action action() {
+        return action;
+    }
+
+    /* Number of messages and tasks skipped so far. */
+    public long expiredCount() {
+        return expired.sum();
+    }
+
+    public static void setDeadline(Span span, long timeout, TimeUnit unit) {
+        setDeadlineAt(span, System.currentTimeMillis() + unit.toMillis(timeout));
+    }
+
+    public static void setDeadlineAt(Span span, long epochMillis) {
+        span.setBaggageItem(Constants.DEADLINE_BAGGAGE_ITEM, Long.toString(epochMillis));
+    }
+
+    /* Returns the deadline in milliseconds since the epoch, or 0 if there is none. */
+    public static long deadline(Span span) {
+        return parseDeadline(span.getBaggageItem(Constants.DEADLINE_BAGGAGE_ITEM));
+    }
+
+    /* Returns the deadline in milliseconds since the epoch, or 0 if there is none. */
+    public static long deadline(SpanContext spanContext) {
+        for (Map.Entry<String, String> item : spanContext.baggageItems()) {
+            if (Constants.DEADLINE_BAGGAGE_ITEM.equals(item.getKey()))
+                return parseDeadline(item.getValue());
+        }
+
+        return 0;
+    }
+
+    static long parseDeadline(String value) {
+        if (value == null)
+            return 0;
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    long expiredDeadline(long deadline) {
+        if (deadline == 0 || System.currentTimeMillis() < deadline)
+            return 0;
+
+        expired.increment();
+        return deadline;
+    }
+
+    /*
+     * Returns true if the task must be skipped. Tasks completing a Future of this library
+     * fail it, any other one is reported to the ExecutionContext, so it is never lost silently.
+     */
+    boolean shed(Span span, Runnable runnable, ExecutionContext ec) {
+        long deadline = expiredDeadline(deadline(span));
+        if (deadline == 0)
+            return false;
+
+        DeadlineExceededException exception = new DeadlineExceededException(deadline);
+        if (runnable instanceof Expirable)
+            ((Expirable)runnable).expire(exception);
+        else
+            ec.reportFailure(exception);
+
+        return true;
+    }
+
+    /* Task able to complete its result upon expiration, instead of running. */
+    interface Expirable {
+        void expire(DeadlineExceededException exception);
+    }
+
+    /* Returns true if the message must be skipped. */
+    boolean shed(long deadline, ActorSystem system, Object message, ActorRef sender, ActorRef recipient) {
+        if (expiredDeadline(deadline) == 0)
+            return false;
+
+        if (action == Action.DEAD_LETTER)
+            system.deadLetters().tell(new DeadLetter(message, sender, recipient), sender);
+
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+
+/**
+ * Traces the elements of a high-rate stream in batches: a single Span covers up to a number
+ * of consecutive elements, and/or the elements of a time window, instead of one Span per element.
+ * It is meant to be called from within a stage's own logic (e.g. around the user function in an
+ * Akka Streams {@code GraphStageLogic.onPush()}), adding no stage boundary, so operator fusion is
+ * kept intact.
+ *
+ * Elements may carry the SpanContext of their producer as {@link TracedMessage}s: the batch Span
+ * is a child of it, and a new batch is started whenever it changes (compared by identity, so
+ * elements wrapped locally with the same Span share batches). Elements without one are
+ * batched under a Span implicitly child of the active one, if any.
+ *
+ * Like stage logic, instances are not thread-safe. As batch Spans are finished by the batcher,
+ * a {@link io.opentracing.ScopeManager} honoring {@code finishOnClose = false} is required (i.e.
+ * not {@link AutoFinishScopeManager}).
+ */
+public final class ElementSpanBatcher {
+    final Tracer tracer;
+    final String operationName;
+    final int maxElements;
+    final long windowNanos;
+    final LongSupplier nanoClock;
+
+    // Current batch.
+    Span span;
+    SpanContext parent;
+    int elements;
+    long batchStart;
+
+    public ElementSpanBatcher(Tracer tracer, String operationName, int maxElements) {
+        this(tracer, operationName, maxElements, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxElements elements per batch, or 0 for no limit.
+     * @param window      duration of each batch, or 0 for no limit.
+     */
+    public ElementSpanBatcher(Tracer tracer, String operationName, int maxElements, long window, TimeUnit unit) {
+        this(tracer, operationName, maxElements, window, unit, System::nanoTime);
+    }
+
+    ElementSpanBatcher(Tracer tracer, String operationName, int maxElements, long window, TimeUnit unit,
+            LongSupplier nanoClock) {
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+        if (operationName == null)
+            throw new IllegalArgumentException("operationName");
+        if (maxElements < 0)
+            throw new IllegalArgumentException("maxElements");
+        if (window < 0 || unit == null)
+            throw new IllegalArgumentException("window");
+        if (maxElements == 0 && window == 0)
+            throw new IllegalArgumentException("Either maxElements or window is required");
+
+        this.tracer = tracer;
+        this.operationName = operationName;
+        this.maxElements = maxElements;
+        this.windowNanos = unit.toNanos(window);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Activates the batch Span for the specified element, to be closed once the element has
+     * been processed. The carried message of {@link TracedMessage} elements is not unwrapped.
+     */
+    public Scope activate(Object element) {
+        SpanContext elementParent = element instanceof TracedMessage
+            ? ((TracedMessage<?>)element).spanContext()
+            : null;
+
+        return activate(elementParent);
+    }
+
+    /* Activates the batch Span for an element with the specified parent, if any. */
+    public Scope activate(SpanContext elementParent) {
+        // The clock is only read when batching by time.
+        long now = windowNanos == 0 ? 0 : nanoClock.getAsLong();
+
+        if (span == null
+                || elementParent != parent
+                || (maxElements != 0 && elements >= maxElements)
+                || (windowNanos != 0 && now - batchStart >= windowNanos))
+            startBatch(elementParent, now);
+
+        elements++;
+        return tracer.scopeManager().activate(span, false);
+    }
+
+    /* Returns the current batch Span, if any. */
+    public Span span() {
+        return span;
+    }
+
+    /* Finishes the current batch, if any, e.g. upon stage completion, failure or stop. */
+    public void finish() {
+        if (span == null)
+            return;
+
+        span.setTag(Constants.STREAM_ELEMENTS, elements);
+        span.finish();
+        span = null;
+        parent = null;
+        elements = 0;
+    }
+
+    void startBatch(SpanContext elementParent, long now) {
+        finish();
+
+        Tracer.SpanBuilder builder = tracer.buildSpan(operationName);
+        if (elementParent != null)
+            builder.asChildOf(elementParent);
+
+        span = builder.startManual();
+        parent = elementParent;
+        batchStart = now;
+    }
+}
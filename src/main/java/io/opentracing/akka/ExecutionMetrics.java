@@ -0,0 +1,110 @@
+package io.opentracing.akka;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+
+/**
+ * Histograms of the scheduling delay (from the submission of a traced task to the
+ * wrapped ExecutionContext until it starts running, that is, the time spent queued)
+ * and the run time of the traced tasks of a {@link TracedExecutionContext} or a
+ * {@link TracedAutoFinishExecutionContext} created with an instance of this class.
+ *
+ * Tasks crossing the optional threshold log both values to their Span.
+ */
+public final class ExecutionMetrics {
+    final LatencyHistogram schedulingDelay = new LatencyHistogram();
+    final LatencyHistogram runTime = new LatencyHistogram();
+    final long thresholdNanos;
+    final FlightRecorder flightRecorder;
+
+    public ExecutionMetrics() {
+        this(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param threshold scheduling delay or run time above which the Span of the task
+     *                  is logged to, or 0 to never log.
+     */
+    public ExecutionMetrics(long threshold, TimeUnit unit) {
+        this(threshold, unit, null);
+    }
+
+    /**
+     * @param flightRecorder where each traced task is also recorded, or null to not record them.
+     */
+    public ExecutionMetrics(long threshold, TimeUnit unit, FlightRecorder flightRecorder) {
+        if (unit == null)
+            throw new IllegalArgumentException("unit");
+
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.flightRecorder = flightRecorder;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(schedulingDelay.snapshot(), runTime.snapshot());
+    }
+
+    public Snapshot snapshotAndReset() {
+        return new Snapshot(schedulingDelay.snapshotAndReset(), runTime.snapshotAndReset());
+    }
+
+    public void reset() {
+        schedulingDelay.reset();
+        runTime.reset();
+    }
+
+    /* Runs the task, recording its times. Must be called while the Span is active. */
+    void run(Runnable runnable, Span span, long submitTime) {
+        long startTime = System.nanoTime();
+        try {
+            runnable.run();
+        } finally {
+            record(span, submitTime, startTime, System.nanoTime());
+        }
+    }
+
+    void record(Span span, long submitTime, long startTime, long endTime) {
+        long delay = startTime - submitTime;
+        long run = endTime - startTime;
+        schedulingDelay.record(delay);
+        runTime.record(run);
+        if (flightRecorder != null)
+            flightRecorder.recordExecution(span, submitTime, startTime, endTime);
+
+        if (thresholdNanos > 0 && span != null && (delay >= thresholdNanos || run >= thresholdNanos)) {
+            Map<String, Object> fields = new HashMap<String, Object>();
+            fields.put("event", Constants.SLOW_EXECUTION_EVENT);
+            fields.put(Constants.SCHEDULING_DELAY, delay);
+            fields.put(Constants.RUN_TIME, run);
+            span.log(fields);
+        }
+    }
+
+    public static final class Snapshot {
+        final LatencyHistogram.Snapshot schedulingDelay;
+        final LatencyHistogram.Snapshot runTime;
+
+        Snapshot(LatencyHistogram.Snapshot schedulingDelay, LatencyHistogram.Snapshot runTime) {
+            this.schedulingDelay = schedulingDelay;
+            this.runTime = runTime;
+        }
+
+        /* Nanoseconds between the submission of tasks and their start. */
+        public LatencyHistogram.Snapshot schedulingDelay() {
+            return schedulingDelay;
+        }
+
+        /* Nanoseconds spent running tasks. */
+        public LatencyHistogram.Snapshot runTime() {
+            return runTime;
+        }
+
+        @Override
+        public String toString() {
+            return "schedulingDelay[" + schedulingDelay + "] runTime[" + runTime + "]";
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.opentracing.akka;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import akka.actor.ActorSystem;
+
+/**
+ * Periodically sampled metrics of the executor of a dispatcher configured with
+ * {@link TracedExecutorServiceConfigurator}: the last sample of its pool size,
+ * active workers, queued tasks and steal count, and a histogram of the sampled
+ * queue depths. Nothing is computed per task.
+ *
+ * Metrics are registered under the actor system name and the dispatcher id, from the
+ * executor creation until its shutdown.
+ */
+public final class ExecutorMetrics {
+    static final ConcurrentMap<String, ExecutorMetrics> REGISTRY = new ConcurrentHashMap<String, ExecutorMetrics>();
+
+    final String systemName;
+    final String id;
+    final LatencyHistogram queueDepth = new LatencyHistogram();
+    volatile Sample lastSample;
+
+    ExecutorMetrics(String systemName, String id) {
+        this.systemName = systemName;
+        this.id = id;
+    }
+
+    /* Returns the metrics of the specified dispatcher, or null if not instrumented. */
+    public static ExecutorMetrics get(ActorSystem system, String id) {
+        if (system == null)
+            throw new IllegalArgumentException("system");
+
+        return get(system.name(), id);
+    }
+
+    /* Returns the metrics of the specified dispatcher, or null if not instrumented. */
+    public static ExecutorMetrics get(String systemName, String id) {
+        return REGISTRY.get(key(systemName, id));
+    }
+
+    /* Returns all the registered metrics, keyed by "systemName/id". */
+    public static Map<String, ExecutorMetrics> all() {
+        return new TreeMap<String, ExecutorMetrics>(REGISTRY);
+    }
+
+    static ExecutorMetrics register(String systemName, String id) {
+        ExecutorMetrics metrics = new ExecutorMetrics(systemName, id);
+        REGISTRY.put(key(systemName, id), metrics);
+        return metrics;
+    }
+
+    /* Only removes these metrics, not the ones of a newer executor of the same dispatcher. */
+    void unregister() {
+        REGISTRY.remove(key(systemName, id), this);
+    }
+
+    // Actor system names cannot contain '/'.
+    static String key(String systemName, String id) {
+        return systemName + "/" + id;
+    }
+
+    public String systemName() {
+        return systemName;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /* Returns the last sample, or null if none has been taken yet. */
+    public Sample lastSample() {
+        return lastSample;
+    }
+
+    public LatencyHistogram.Snapshot queueDepth() {
+        return queueDepth.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot queueDepthAndReset() {
+        return queueDepth.snapshotAndReset();
+    }
+
+    void sample(ExecutorService executor) {
+        Sample sample;
+        if (executor instanceof akka.dispatch.forkjoin.ForkJoinPool) {
+            akka.dispatch.forkjoin.ForkJoinPool pool = (akka.dispatch.forkjoin.ForkJoinPool)executor;
+            sample = new Sample(pool.getPoolSize(), pool.getActiveThreadCount(),
+                    pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount(), pool.getStealCount());
+        } else if (executor instanceof java.util.concurrent.ForkJoinPool) {
+            java.util.concurrent.ForkJoinPool pool = (java.util.concurrent.ForkJoinPool)executor;
+            sample = new Sample(pool.getPoolSize(), pool.getActiveThreadCount(),
+                    pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount(), pool.getStealCount());
+        } else if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor)executor;
+            sample = new Sample(pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size(), 0);
+        } else {
+            return;
+        }
+
+        queueDepth.record(sample.queuedTasks);
+        lastSample = sample;
+    }
+
+    public static final class Sample {
+        final long timestamp = System.currentTimeMillis();
+        final int poolSize;
+        final int activeThreads;
+        final long queuedTasks;
+        final long stealCount;
+
+        Sample(int poolSize, int activeThreads, long queuedTasks, long stealCount) {
+            this.poolSize = poolSize;
+            this.activeThreads = activeThreads;
+            this.queuedTasks = queuedTasks;
+            this.stealCount = stealCount;
+        }
+
+        /* Milliseconds since the epoch. */
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public int poolSize() {
+            return poolSize;
+        }
+
+        public int activeThreads() {
+            return activeThreads;
+        }
+
+        public long queuedTasks() {
+            return queuedTasks;
+        }
+
+        /* Always 0 for thread pool executors. */
+        public long stealCount() {
+            return stealCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("poolSize=%d activeThreads=%d queuedTasks=%d stealCount=%d",
+                    poolSize, activeThreads, queuedTasks, stealCount);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package io.opentracing.akka;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import akka.actor.ActorSystem;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+/**
+ * Fixed-size ring of the most recent traced task executions and actor receives, kept off-heap
+ * as compact records (ids, operation, actor path, nanoTime timestamps and thread id), so the
+ * last seconds of activity can be dumped to a file when an incident happens, without
+ * exporting every Span.
+ *
+ * Fed by the {@link ExecutionMetrics} and {@link ActorMetrics} created with it. Recording
+ * allocates nothing on the heap, except the first time an actor path or message class is seen:
+ * those are kept in a table of names, never purged.
+ *
+ * Each slot is guarded by a sequence number kept in an {@link AtomicLongArray}: writers claim the
+ * slot with a CAS before writing, and publish the record with a volatile write afterwards, while
+ * dumps validate each copied record with a CAS. Records being written or overwritten while dumping
+ * are skipped, and records whose slot is still being written by a writer lapped by this one
+ * are dropped.
+ *
+ * As the OpenTracing API exposes no ids, they are obtained through the registered
+ * {@link GlobalSpanIds}, being 0 unless registered.
+ *
+ * It is registered as an MBean per {@link ActorSystem} (see {@link #register(ActorSystem)})
+ * once a {@link TracedAbstractActor} records into it through its {@link ActorMetrics}.
+ */
+public final class FlightRecorder implements FlightRecorderMBean {
+    public static final byte EXECUTE = 1;
+    public static final byte RECEIVE = 2;
+
+    static final int MAGIC = 0x414b4652; // AKFR
+    static final int VERSION = 1;
+
+    static final int SEQUENCE = 0;
+    static final int TRACE_ID = 8;
+    static final int SPAN_ID = 16;
+    static final int START = 24;
+    static final int END = 32;
+    static final int QUEUE_TIME = 40;
+    static final int THREAD_ID = 48;
+    static final int PATH = 56;
+    static final int NAME = 60;
+    static final int KIND = 64;
+    static final int RECORD_SIZE = 72;
+
+    final ByteBuffer buffer;
+    final int capacity;
+    final AtomicLong next = new AtomicLong();
+    final AtomicLongArray sequences;
+    final LongAdder droppedRecords = new LongAdder();
+
+    final ConcurrentMap<String, Integer> nameIds = new ConcurrentHashMap<String, Integer>();
+    final List<String> names = new ArrayList<String>();
+
+    // ObjectNames this recorder is registered under, per system name.
+    final ConcurrentMap<String, ObjectName> registrations = new ConcurrentHashMap<String, ObjectName>();
+
+    /**
+     * @param capacity records kept, taking {@value #RECORD_SIZE} bytes each.
+     */
+    public FlightRecorder(int capacity) {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / RECORD_SIZE)
+            throw new IllegalArgumentException("capacity");
+
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        this.sequences = new AtomicLongArray(capacity);
+        nameId(""); // 0, for no name.
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /* Records ever written, including the overwritten ones. */
+    @Override
+    public long getRecordedSpans() {
+        return next.get();
+    }
+
+    /* Records dropped as their slot was still being written by a slower writer. */
+    @Override
+    public long getDroppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    /* Name of the MBean of the recorder registered for the specified system. */
+    public static ObjectName objectName(String systemName) {
+        if (systemName == null)
+            throw new IllegalArgumentException("systemName");
+
+        try {
+            return new ObjectName("io.opentracing.akka:type=FlightRecorder,system=" + ObjectName.quote(systemName));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("systemName", e);
+        }
+    }
+
+    /**
+     * Registers this recorder in the platform MBean server under {@link #objectName(String)} of
+     * the specified system, unless already done, and unregisters it once the system terminates.
+     * If another recorder is already registered for the system, it is kept.
+     */
+    public void register(ActorSystem system) {
+        if (system == null)
+            throw new IllegalArgumentException("system");
+
+        final String systemName = system.name();
+        if (registrations.containsKey(systemName))
+            return;
+
+        ObjectName objectName = objectName(systemName);
+        if (registrations.putIfAbsent(systemName, objectName) != null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            registrations.remove(systemName);
+            return;
+        } catch (JMException e) {
+            registrations.remove(systemName);
+            throw new IllegalStateException(e);
+        }
+
+        system.registerOnTermination(new Runnable() {
+            @Override
+            public void run() {
+                unregister(systemName);
+            }
+        });
+    }
+
+    void unregister(String systemName) {
+        ObjectName objectName = registrations.remove(systemName);
+        if (objectName == null)
+            return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // Already unregistered by the user.
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null)
+            return id;
+
+        synchronized (names) {
+            id = nameIds.get(name);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                nameIds.put(name, id);
+            }
+        }
+
+        return id;
+    }
+
+    void recordExecution(Span span, long submitTime, long startTime, long endTime) {
+        record(EXECUTE, span, 0, nameId(Constants.EXECUTE_OPERATION_NAME),
+                submitTime == 0 ? -1 : startTime - submitTime, startTime, endTime);
+    }
+
+    void recordReceive(Span span, int pathId, Object message, long queueTime, long startTime, long endTime) {
+        record(RECEIVE, span, pathId, nameId(message.getClass().getName()), queueTime, startTime, endTime);
+    }
+
+    void record(byte kind, Span span, int pathId, int nameId, long queueTime, long startTime, long endTime) {
+        SpanContext context = span == null ? null : span.context();
+        SpanIds spanIds = GlobalSpanIds.get();
+        long sequence = next.getAndIncrement();
+        int slot = (int)(sequence % capacity);
+        int offset = slot * RECORD_SIZE;
+
+        // Claimed (negated sequence) with a CAS, ordering the writes below after it.
+        long current = sequences.get(slot);
+        if (current < 0 || current > sequence || !sequences.compareAndSet(slot, current, -(sequence + 1))) {
+            droppedRecords.increment();
+            return;
+        }
+
+        // Absolute puts only, as records are written concurrently.
+        buffer.putLong(offset + SEQUENCE, sequence + 1);
+        buffer.putLong(offset + TRACE_ID, context == null ? 0 : spanIds.traceId(context));
+        buffer.putLong(offset + SPAN_ID, context == null ? 0 : spanIds.spanId(context));
+        buffer.putLong(offset + START, startTime);
+        buffer.putLong(offset + END, endTime);
+        buffer.putLong(offset + QUEUE_TIME, queueTime);
+        buffer.putLong(offset + THREAD_ID, Thread.currentThread().getId());
+        buffer.putInt(offset + PATH, pathId);
+        buffer.putInt(offset + NAME, nameId);
+        buffer.put(offset + KIND, kind);
+
+        // Published with a volatile write, ordering the writes above before it.
+        sequences.set(slot, sequence + 1);
+    }
+
+    @Override
+    public void dump(String file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("file");
+
+        dump(Paths.get(file));
+    }
+
+    /**
+     * Writes the names and the records currently kept, oldest first, along with the current
+     * wall clock and nanoTime values to relate the timestamps to. Records are written as laid
+     * out in memory (big-endian, {@value #RECORD_SIZE} bytes each). See {@link #read(Path)}.
+     */
+    public void dump(Path file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("file");
+
+        List<String> currentNames;
+        synchronized (names) {
+            currentNames = new ArrayList<String>(names);
+        }
+
+        // Records are copied first, so overwritten ones can be detected.
+        long last = next.get();
+        long first = Math.max(0, last - capacity);
+        ByteBuffer records = ByteBuffer.allocate((int)(last - first) * RECORD_SIZE);
+        ByteBuffer source = buffer.duplicate();
+        for (long sequence = first; sequence < last; sequence++) {
+            int slot = (int)(sequence % capacity);
+            if (sequences.get(slot) != sequence + 1)
+                continue;
+
+            int offset = slot * RECORD_SIZE;
+            int position = records.position();
+            source.limit(offset + RECORD_SIZE).position(offset);
+            records.put(source);
+
+            // A CAS, unlike a volatile read, keeps the copy above from being reordered after it.
+            if (!sequences.compareAndSet(slot, sequence + 1, sequence + 1))
+                records.position(position);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(System.nanoTime());
+
+            out.writeInt(currentNames.size());
+            for (String name : currentNames)
+                out.writeUTF(name);
+
+            out.writeInt(records.position() / RECORD_SIZE);
+            out.write(records.array(), 0, records.position());
+        }
+    }
+
+    /* Reads the records of a file written by {@link #dump(Path)}, oldest first. */
+    public static List<Record> read(Path file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("file");
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a flight recorder dump: " + file);
+
+            in.readLong(); // Wall clock.
+            in.readLong(); // nanoTime.
+
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = in.readUTF();
+
+            int count = in.readInt();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            List<Record> records = new ArrayList<Record>(count);
+            for (int i = 0; i < count; i++) {
+                in.readFully(record.array());
+                records.add(new Record(record.get(KIND),
+                        record.getLong(TRACE_ID),
+                        record.getLong(SPAN_ID),
+                        record.getLong(THREAD_ID),
+                        names[record.getInt(PATH)],
+                        names[record.getInt(NAME)],
+                        record.getLong(QUEUE_TIME),
+                        record.getLong(START),
+                        record.getLong(END)));
+            }
+
+            return records;
+        }
+    }
+
+    public static final class Record {
+        final byte kind;
+        final long traceId;
+        final long spanId;
+        final long threadId;
+        final String actorPath;
+        final String name;
+        final long queueTime;
+        final long startTime;
+        final long endTime;
+
+        Record(byte kind, long traceId, long spanId, long threadId, String actorPath, String name,
+                long queueTime, long startTime, long endTime) {
+            this.kind = kind;
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.threadId = threadId;
+            this.actorPath = actorPath;
+            this.name = name;
+            this.queueTime = queueTime;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        /* {@link FlightRecorder#EXECUTE} or {@link FlightRecorder#RECEIVE}. */
+        public byte kind() {
+            return kind;
+        }
+
+        public long traceId() {
+            return traceId;
+        }
+
+        public long spanId() {
+            return spanId;
+        }
+
+        public long threadId() {
+            return threadId;
+        }
+
+        /* Empty for executions. */
+        public String actorPath() {
+            return actorPath;
+        }
+
+        /* Operation name of executions, message class name of receives. */
+        public String name() {
+            return name;
+        }
+
+        /* Nanoseconds queued before running or being received, or -1 if unknown. */
+        public long queueTime() {
+            return queueTime;
+        }
+
+        /* System.nanoTime() values. */
+        public long startTime() {
+            return startTime;
+        }
+
+        public long endTime() {
+            return endTime;
+        }
+
+        @Override
+        public String toString() {
+            return (kind == EXECUTE ? "execute" : "receive") + " trace=" + traceId + " span=" + spanId
+                + " thread=" + threadId + " path=" + actorPath + " name=" + name
+                + " queue=" + queueTime + " duration=" + (endTime - startTime);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.opentracing.akka;
+
+import java.io.IOException;
+
+/* JMX view of a {@link FlightRecorder}, to trigger dumps remotely. */
+public interface FlightRecorderMBean {
+    int getCapacity();
+
+    long getRecordedSpans();
+
+    long getDroppedRecords();
+
+    void dump(String file) throws IOException;
+}
@@ -0,0 +1,23 @@
+package io.opentracing.akka;
+
+/**
+ * Process-wide {@link SpanIds}, used by all the recorders, like the {@code GlobalTracer}
+ * is for the Tracer. Defaults to {@link SpanIds#NONE}.
+ */
+public final class GlobalSpanIds {
+    static volatile SpanIds spanIds = SpanIds.NONE;
+
+    private GlobalSpanIds() {
+    }
+
+    public static SpanIds get() {
+        return spanIds;
+    }
+
+    public static void register(SpanIds spanIds) {
+        if (spanIds == null)
+            throw new IllegalArgumentException("spanIds");
+
+        GlobalSpanIds.spanIds = spanIds;
+    }
+}
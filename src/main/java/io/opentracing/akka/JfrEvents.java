@@ -0,0 +1,191 @@
+package io.opentracing.akka;
+
+import akka.actor.ActorPath;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+/**
+ * Java Flight Recorder events emitted by {@link TracedAbstractActor} (message receives), the
+ * traced ExecutionContexts (task runs) and the {@link AutoFinishScopeManager} (automatic Span
+ * finishes), to correlate traces with CPU and GC profiles.
+ *
+ * They are enabled, disabled and thresholded through the JFR settings of the
+ * {@code io.opentracing.akka.Receive}, {@code io.opentracing.akka.Execute} and
+ * {@code io.opentracing.akka.SpanFinish} events. No event is allocated unless enabled in a
+ * running recording, and nothing is done on JVMs without JFR.
+ *
+ * As the OpenTracing API exposes no ids, they are obtained through the registered
+ * {@link GlobalSpanIds}, being 0 unless registered.
+ */
+public final class JfrEvents {
+    static final boolean AVAILABLE = isJfrAvailable();
+
+    private JfrEvents() {
+    }
+
+    static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /* Whether this JVM supports JFR (Java 8u262 and later). */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /*
+     * Events are handled as Objects outside of this class, and their classes only
+     * loaded once JFR is known to be available.
+     */
+    static Object beginReceive() {
+        return AVAILABLE && Events.RECEIVE.isEnabled() ? Events.beginReceive() : null;
+    }
+
+    static void commitReceive(Object event, ActorPath actorPath, Object message, Span span) {
+        Events.commitReceive(event, actorPath, message, span);
+    }
+
+    static Object beginExecute() {
+        return AVAILABLE && Events.EXECUTE.isEnabled() ? Events.beginExecute() : null;
+    }
+
+    static void commitExecute(Object event, Span span) {
+        Events.commitExecute(event, span);
+    }
+
+    static Object beginSpanFinish() {
+        return AVAILABLE && Events.SPAN_FINISH.isEnabled() ? Events.beginSpanFinish() : null;
+    }
+
+    static void commitSpanFinish(Object event, Span span) {
+        Events.commitSpanFinish(event, span);
+    }
+
+    static final class Events {
+        // Only queried for their enabled state, which is shared by all the events of a class.
+        static final ReceiveEvent RECEIVE = new ReceiveEvent();
+        static final ExecuteEvent EXECUTE = new ExecuteEvent();
+        static final SpanFinishEvent SPAN_FINISH = new SpanFinishEvent();
+
+        static Object beginReceive() {
+            ReceiveEvent event = new ReceiveEvent();
+            event.begin();
+            return event;
+        }
+
+        static void commitReceive(Object handle, ActorPath actorPath, Object message, Span span) {
+            ReceiveEvent event = (ReceiveEvent)handle;
+            event.end();
+            if (!event.shouldCommit())
+                return;
+
+            event.actorPath = actorPath.toString();
+            event.messageClass = message.getClass();
+            if (span != null) {
+                SpanContext context = span.context();
+                SpanIds spanIds = GlobalSpanIds.get();
+                event.traceId = spanIds.traceId(context);
+                event.spanId = spanIds.spanId(context);
+            }
+
+            event.commit();
+        }
+
+        static Object beginExecute() {
+            ExecuteEvent event = new ExecuteEvent();
+            event.begin();
+            return event;
+        }
+
+        static void commitExecute(Object handle, Span span) {
+            ExecuteEvent event = (ExecuteEvent)handle;
+            event.end();
+            if (!event.shouldCommit())
+                return;
+
+            if (span != null) {
+                SpanContext context = span.context();
+                SpanIds spanIds = GlobalSpanIds.get();
+                event.traceId = spanIds.traceId(context);
+                event.spanId = spanIds.spanId(context);
+            }
+
+            event.commit();
+        }
+
+        static Object beginSpanFinish() {
+            SpanFinishEvent event = new SpanFinishEvent();
+            event.begin();
+            return event;
+        }
+
+        static void commitSpanFinish(Object handle, Span span) {
+            SpanFinishEvent event = (SpanFinishEvent)handle;
+            event.end();
+            if (!event.shouldCommit())
+                return;
+
+            SpanContext context = span.context();
+            SpanIds spanIds = GlobalSpanIds.get();
+            event.traceId = spanIds.traceId(context);
+            event.spanId = spanIds.spanId(context);
+            event.commit();
+        }
+    }
+
+    @Name("io.opentracing.akka.Receive")
+    @Label("Actor Receive")
+    @Category({"OpenTracing", "Akka"})
+    @Description("Message processed by a TracedAbstractActor")
+    @StackTrace(false)
+    static final class ReceiveEvent extends Event {
+        @Label("Actor Path")
+        String actorPath;
+
+        @Label("Message Class")
+        Class<?> messageClass;
+
+        @Label("Trace Id")
+        long traceId;
+
+        @Label("Span Id")
+        long spanId;
+    }
+
+    @Name("io.opentracing.akka.Execute")
+    @Label("Traced Task")
+    @Category({"OpenTracing", "Akka"})
+    @Description("Task run by a traced ExecutionContext, with its Span active")
+    @StackTrace(false)
+    static final class ExecuteEvent extends Event {
+        @Label("Trace Id")
+        long traceId;
+
+        @Label("Span Id")
+        long spanId;
+    }
+
+    @Name("io.opentracing.akka.SpanFinish")
+    @Label("Span Auto Finish")
+    @Category({"OpenTracing", "Akka"})
+    @Description("Span finished by the AutoFinishScopeManager, lasting as long as its reporting")
+    @StackTrace(false)
+    static final class SpanFinishEvent extends Event {
+        @Label("Trace Id")
+        long traceId;
+
+        @Label("Span Id")
+        long spanId;
+    }
+}
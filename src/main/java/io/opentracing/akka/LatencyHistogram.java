@@ -0,0 +1,129 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values (usually nanoseconds), in the HdrHistogram
+ * fashion: values are counted in log-linear buckets (8 linear sub-buckets per power of two),
+ * so recording is a couple of atomic increments, and reported values are within 12.5%
+ * of the recorded ones.
+ *
+ * Snapshots are not atomic with respect to concurrent recordings, which may be
+ * partially included.
+ */
+public final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+    final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    final AtomicLong total = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int)value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return exponent * SUB_BUCKETS + (int)(value >>> exponent);
+    }
+
+    /* Highest value counted in the specified bucket. */
+    static long bucketHighestValue(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        counts.incrementAndGet(bucketIndex(value));
+        total.addAndGet(value);
+
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] snapshotCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            snapshotCounts[i] = counts.get(i);
+
+        return new Snapshot(snapshotCounts, total.get(), max.get());
+    }
+
+    /* Returns the current snapshot, starting over from empty. */
+    public Snapshot snapshotAndReset() {
+        long[] snapshotCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            snapshotCounts[i] = counts.getAndSet(i, 0);
+
+        return new Snapshot(snapshotCounts, total.getAndSet(0), max.getAndSet(0));
+    }
+
+    public void reset() {
+        snapshotAndReset();
+    }
+
+    public static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long total;
+        final long max;
+
+        Snapshot(long[] counts, long total, long max) {
+            long count = 0;
+            for (long bucketCount : counts)
+                count += bucketCount;
+
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double)total / count;
+        }
+
+        /**
+         * Returns the value below which the specified percentage (0 to 100) of the
+         * recorded values are, rounded up to the highest value of its bucket.
+         */
+        public long valueAtPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+
+            long target = Math.max(1, (long)Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target)
+                    return Math.min(bucketHighestValue(i), max);
+            }
+
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d",
+                    count, mean(), valueAtPercentile(50), valueAtPercentile(99), max);
+        }
+    }
+}
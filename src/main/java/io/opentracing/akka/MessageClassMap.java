@@ -0,0 +1,49 @@
+package io.opentracing.akka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Values configured per message class, also applying to subclasses and implementations
+ * (the closest one wins). Lookups are resolved once per class and cached with a ClassValue,
+ * so they neither lock nor allocate afterwards.
+ */
+final class MessageClassMap<V> {
+    final Map<Class<?>, V> values;
+    final V defaultValue;
+
+    // Never changes, so the resolution is cached for good.
+    final ClassValue<V> resolved = new ClassValue<V>() {
+        @Override
+        protected V computeValue(Class<?> type) {
+            V value = resolve(type);
+            return value != null ? value : defaultValue;
+        }
+    };
+
+    MessageClassMap(Map<Class<?>, V> values, V defaultValue) {
+        this.values = new HashMap<Class<?>, V>(values);
+        this.defaultValue = defaultValue;
+    }
+
+    V get(Class<?> type) {
+        return values.isEmpty() ? defaultValue : resolved.get(type);
+    }
+
+    /* Closest configured value, or null if there is none. */
+    V resolve(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            V value = values.get(current);
+            if (value != null)
+                return value;
+
+            for (Class<?> implemented : current.getInterfaces()) {
+                value = resolve(implemented);
+                if (value != null)
+                    return value;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+package io.opentracing.akka;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which messages are traced, by message class: e.g. never heartbeats, always
+ * orders and 1% of ticks. Rates can be set per message class, applying to its subclasses
+ * and implementations too (the closest one wins), and are resolved once per class, so
+ * decisions do not allocate.
+ *
+ * It can be applied when wrapping messages, through
+ * {@link TracedMessage#wrap(io.opentracing.Span, Object, PropagationPolicy, MessageSamplingPolicy)},
+ * which avoids creating unneeded {@link TracedMessage}s, or by a {@link TracedAbstractActor}
+ * receiving them, e.g. from senders not applying it. Applying it at both places compounds
+ * fractional rates.
+ */
+public final class MessageSamplingPolicy {
+    final MessageClassMap<Double> rates;
+
+    public MessageSamplingPolicy(double rate) {
+        this(rate, Collections.<Class<?>, Double>emptyMap());
+    }
+
+    /**
+     * @param rate          fraction (0 to 1) of the messages of any other class to trace.
+     * @param messageRates  fractions for specific message classes.
+     */
+    public MessageSamplingPolicy(double rate, Map<Class<?>, Double> messageRates) {
+        if (!validRate(rate))
+            throw new IllegalArgumentException("rate");
+        if (messageRates == null)
+            throw new IllegalArgumentException("messageRates");
+
+        for (Map.Entry<Class<?>, Double> entry : messageRates.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || !validRate(entry.getValue()))
+                throw new IllegalArgumentException("messageRates");
+        }
+
+        this.rates = new MessageClassMap<Double>(messageRates, rate);
+    }
+
+    static boolean validRate(double rate) {
+        return rate >= 0 && rate <= 1;
+    }
+
+    /* Fraction of the messages of the specified class to trace. */
+    public double rate(Class<?> messageClass) {
+        return rates.get(messageClass);
+    }
+
+    public boolean shouldTrace(Class<?> messageClass) {
+        double rate = rates.get(messageClass);
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+}
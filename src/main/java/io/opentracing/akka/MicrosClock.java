@@ -0,0 +1,17 @@
+package io.opentracing.akka;
+
+/*
+ * Converts System.nanoTime() values to wall clock microseconds, as expected by
+ * Span timestamps, keeping their precision. Based on a single reading of both clocks.
+ */
+final class MicrosClock {
+    static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    static final long BASE_NANOS = System.nanoTime();
+
+    private MicrosClock() {
+    }
+
+    static long micros(long nanoTime) {
+        return BASE_MICROS + (nanoTime - BASE_NANOS) / 1000;
+    }
+}
@@ -0,0 +1,37 @@
+package io.opentracing.akka;
+
+import io.opentracing.Span;
+import io.opentracing.noop.NoopSpan;
+
+/**
+ * Decides whether the active {@link Span} is worth propagating to a Future callback
+ * or an actor. Rejected work runs through the underlying {@code ExecutionContext}
+ * (or is delivered as the original message) without any capture or activation.
+ *
+ * Unsampled Spans are a typical case, although the OpenTracing API does not expose
+ * the sampling decision, so a tracer specific check is required, e.g.:
+ *
+ * <pre>
+ * PropagationPolicy sampledOnly = span -&gt; ((JaegerSpanContext)span.context()).isSampled();
+ * </pre>
+ *
+ * Implementations are called once per callback or message, so they should be cheap
+ * and must be thread-safe.
+ */
+public interface PropagationPolicy {
+    /**
+     * Returns whether the specified, non-null, {@link Span} should be propagated.
+     */
+    boolean shouldPropagate(Span span);
+
+    /**
+     * Propagates every {@link Span}.
+     */
+    PropagationPolicy ALWAYS = span -> true;
+
+    /**
+     * Propagates every {@link Span} except for {@link NoopSpan}s, which carry nothing.
+     * This is the default policy.
+     */
+    PropagationPolicy SKIP_NOOP = span -> !(span instanceof NoopSpan);
+}
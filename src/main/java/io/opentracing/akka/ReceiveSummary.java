@@ -0,0 +1,82 @@
+package io.opentracing.akka;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/*
+ * Messages being coalesced by a TracedAbstractActor. Confined to the actor, and reused
+ * from one summary to the next.
+ */
+final class ReceiveSummary {
+    final CoalescingPolicy policy;
+
+    // Current summary, if parent is not null.
+    Class<?> messageClass;
+    Span parent;
+    long startNanos;
+    long endNanos;
+    int count;
+    long min;
+    long max;
+    long total;
+
+    ReceiveSummary(CoalescingPolicy policy) {
+        this.policy = policy;
+    }
+
+    boolean accepts(Class<?> messageClass, Span parent, long now) {
+        return this.parent == parent
+            && this.messageClass == messageClass
+            && now - startNanos < policy.windowNanos
+            && (policy.maxCount == 0 || count < policy.maxCount);
+    }
+
+    boolean expired(long now) {
+        return parent != null && now - startNanos >= policy.windowNanos;
+    }
+
+    void start(Class<?> messageClass, Span parent, long now) {
+        this.messageClass = messageClass;
+        this.parent = parent;
+        this.startNanos = now;
+        this.count = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = 0;
+        this.total = 0;
+    }
+
+    void record(long start, long end) {
+        long elapsed = end - start;
+        count++;
+        total += elapsed;
+        if (elapsed < min)
+            min = elapsed;
+        if (elapsed > max)
+            max = elapsed;
+
+        endNanos = end;
+    }
+
+    /* Records the summary Span, if any, spanning from the first message start to the last one end. */
+    void finish(Tracer tracer, String actorPath) {
+        if (parent == null)
+            return;
+
+        if (count > 0) {
+            tracer.buildSpan(Constants.RECEIVE_OPERATION_NAME)
+                .asChildOf(parent)
+                .withStartTimestamp(MicrosClock.micros(startNanos))
+                .withTag(Constants.ACTOR_PATH, actorPath)
+                .withTag(Constants.MESSAGE_TYPE, messageClass.getName())
+                .withTag(Constants.COALESCED_COUNT, count)
+                .withTag(Constants.COALESCED_MIN_TIME, min)
+                .withTag(Constants.COALESCED_MAX_TIME, max)
+                .withTag(Constants.COALESCED_TOTAL_TIME, total)
+                .start()
+                .finish(MicrosClock.micros(endNanos));
+        }
+
+        messageClass = null;
+        parent = null;
+    }
+}
@@ -0,0 +1,51 @@
+package io.opentracing.akka;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes {@link TracedAbstractActor} record a child Span of the propagated one only for
+ * messages whose processing exceeds a threshold, so hot actors cost two clock reads per
+ * message unless they are slow. The child Span is backdated to the start of processing.
+ *
+ * Thresholds can be set per message class, applying to its subclasses and implementations
+ * too (the closest one wins), and are resolved once per class. Messages received from remote
+ * systems already get a {@link Constants#RECEIVE_OPERATION_NAME} Span, so they are not measured.
+ */
+public final class SlowReceivePolicy {
+    final MessageClassMap<Long> thresholds;
+
+    public SlowReceivePolicy(long threshold, TimeUnit unit) {
+        this(threshold, Collections.<Class<?>, Long>emptyMap(), unit);
+    }
+
+    /**
+     * @param threshold          threshold for messages of any other class.
+     * @param messageThresholds  thresholds for specific message classes.
+     */
+    public SlowReceivePolicy(long threshold, Map<Class<?>, Long> messageThresholds, TimeUnit unit) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold");
+        if (messageThresholds == null)
+            throw new IllegalArgumentException("messageThresholds");
+        if (unit == null)
+            throw new IllegalArgumentException("unit");
+
+        Map<Class<?>, Long> thresholdsNanos = new HashMap<Class<?>, Long>();
+        for (Map.Entry<Class<?>, Long> entry : messageThresholds.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue() < 0)
+                throw new IllegalArgumentException("messageThresholds");
+
+            thresholdsNanos.put(entry.getKey(), unit.toNanos(entry.getValue()));
+        }
+
+        this.thresholds = new MessageClassMap<Long>(thresholdsNanos, unit.toNanos(threshold));
+    }
+
+    /* Threshold for messages of the specified class, in nanoseconds. */
+    public long thresholdNanos(Class<?> messageClass) {
+        return thresholds.get(messageClass);
+    }
+}
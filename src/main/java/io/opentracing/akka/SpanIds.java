@@ -0,0 +1,47 @@
+package io.opentracing.akka;
+
+import java.util.function.ToLongFunction;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Extracts the trace and span ids of a {@link SpanContext} for the recorders that store them
+ * in compact form ({@link FlightRecorder}, {@link JfrEvents}), as the OpenTracing API does not
+ * expose them, e.g.:
+ *
+ * <pre>
+ * GlobalSpanIds.register(SpanIds.of(ctx -&gt; ((JaegerSpanContext)ctx).getTraceId(),
+ *     ctx -&gt; ((JaegerSpanContext)ctx).getSpanId()));
+ * </pre>
+ *
+ * Implementations are called once per record, so they should be cheap and must be thread-safe.
+ */
+public interface SpanIds {
+    long traceId(SpanContext context);
+
+    long spanId(SpanContext context);
+
+    /**
+     * Records 0 for both ids. This is the default.
+     */
+    SpanIds NONE = of(context -> 0, context -> 0);
+
+    static SpanIds of(ToLongFunction<SpanContext> traceId, ToLongFunction<SpanContext> spanId) {
+        if (traceId == null)
+            throw new IllegalArgumentException("traceId");
+        if (spanId == null)
+            throw new IllegalArgumentException("spanId");
+
+        return new SpanIds() {
+            @Override
+            public long traceId(SpanContext context) {
+                return traceId.applyAsLong(context);
+            }
+
+            @Override
+            public long spanId(SpanContext context) {
+                return spanId.applyAsLong(context);
+            }
+        };
+    }
+}
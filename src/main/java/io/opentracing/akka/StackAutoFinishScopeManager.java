@@ -0,0 +1,83 @@
+package io.opentracing.akka;
+
+import io.opentracing.Span;
+
+/**
+ * Alternative to {@link AutoFinishScopeManager} keeping the active {@link io.opentracing.Scope}s
+ * of each thread in a preallocated, growable array, instead of a chain of Scopes each
+ * one pointing to the one to restore.
+ *
+ * Activating a {@link Span} pushes its Scope with a single {@link ThreadLocal}
+ * lookup, and closing it is an index decrement with no {@link ThreadLocal} access
+ * at all, as each Scope keeps a reference to the stack of the thread it was
+ * activated on. Continuation and reference counting semantics are the same as
+ * {@link AutoFinishScopeManager}'s, so it can be used with
+ * {@link TracedAutoFinishExecutionContext} as well.
+ */
+public class StackAutoFinishScopeManager extends AbstractAutoFinishScopeManager {
+    static final int INITIAL_CAPACITY = 8;
+
+    final ThreadLocal<ScopeStack> tlsStack = new ThreadLocal<ScopeStack>() {
+        @Override
+        protected ScopeStack initialValue() {
+            return new ScopeStack();
+        }
+    };
+
+    public StackAutoFinishScopeManager() {
+        this(AutoFinishScopeManager.RefCounting.ATOMIC);
+    }
+
+    public StackAutoFinishScopeManager(AutoFinishScopeManager.RefCounting refCounting) {
+        this(refCounting, null);
+    }
+
+    public StackAutoFinishScopeManager(AutoFinishScopeManager.RefCounting refCounting,
+            ContinuationLeakDetector leakDetector) {
+        super(refCounting, leakDetector);
+    }
+
+    static final class ScopeStack {
+        final Thread thread = Thread.currentThread();
+        AutoFinishScope[] scopes = new AutoFinishScope[INITIAL_CAPACITY];
+        int size;
+
+        void push(AutoFinishScope scope) {
+            if (size == scopes.length) {
+                AutoFinishScope[] grown = new AutoFinishScope[size << 1];
+                System.arraycopy(scopes, 0, grown, 0, size);
+                scopes = grown;
+            }
+
+            scopes[size++] = scope;
+        }
+
+        AutoFinishScope peek() {
+            return size == 0 ? null : scopes[size - 1];
+        }
+    }
+
+    @Override
+    public AutoFinishScope active() {
+        return tlsStack.get().peek();
+    }
+
+    @Override
+    Object push(AutoFinishScope scope) {
+        ScopeStack stack = tlsStack.get();
+        stack.push(scope);
+        return stack;
+    }
+
+    @Override
+    boolean pop(AutoFinishScope scope, Object restore) {
+        ScopeStack stack = (ScopeStack)restore;
+
+        // Closing from another thread, or out of order, is a no-op.
+        if (stack.thread != Thread.currentThread() || stack.peek() != scope)
+            return false;
+
+        stack.scopes[--stack.size] = null;
+        return true;
+    }
+}
@@ -0,0 +1,515 @@
+package io.opentracing.akka;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tags;
+
+/**
+ * {@link Tracer} decorator doing tail-based sampling in process: finished Spans are buffered
+ * per trace instead of being finished on the decorated Tracer (which usually reports them upon
+ * finish), until the local root Span finishes. The whole trace is then either finished on the
+ * decorated Tracer, if it was slow, had an error or went through a matching actor path, or dropped.
+ *
+ * As the OpenTracing API exposes no trace ids, local traces are made of the Spans created under
+ * a Span of this Tracer, as an explicit parent {@link Span} or the active one. Spans whose parent
+ * is only known as a {@link SpanContext} (e.g. extracted from a remote system) are local roots.
+ *
+ * Memory is bounded: a fixed number of fixed-size buffers is preallocated, and Spans of a trace
+ * beyond its buffer size overwrite the oldest ones (except for the local root, buffered last).
+ * When all the buffers are in use, the one of the oldest pending trace is reclaimed, dropping that
+ * trace, so local roots never finished (e.g. leaked) cannot hold buffers forever. Spans finishing
+ * after the decision follow it.
+ */
+public final class TailSamplingTracer implements Tracer {
+    final Tracer tracer;
+    final long latencyThresholdMicros;
+    final Predicate<String> actorPaths;
+    final ArrayBlockingQueue<TraceBuffer> buffers;
+    final TraceBuffer[] allBuffers;
+
+    final LongAdder keptTraces = new LongAdder();
+    final LongAdder droppedTraces = new LongAdder();
+    final LongAdder overflowedTraces = new LongAdder();
+    final LongAdder reclaimedTraces = new LongAdder();
+    final LongAdder evictedSpans = new LongAdder();
+
+    // Wall clock in microseconds, with nanoTime precision.
+    final long baseMicros = System.currentTimeMillis() * 1000;
+    final long baseNanos = System.nanoTime();
+
+    /**
+     * @param latencyThreshold  local root duration from which traces are kept.
+     * @param actorPaths        keeps traces with a Span tagged with a matching
+     *                          {@link Constants#ACTOR_PATH}, or null for none.
+     * @param maxTraces         traces buffered at once.
+     * @param maxSpansPerTrace  Spans buffered per trace.
+     */
+    public TailSamplingTracer(Tracer tracer, long latencyThreshold, TimeUnit unit, Predicate<String> actorPaths,
+            int maxTraces, int maxSpansPerTrace) {
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+        if (latencyThreshold < 0 || unit == null)
+            throw new IllegalArgumentException("latencyThreshold");
+        if (maxTraces <= 0)
+            throw new IllegalArgumentException("maxTraces");
+        if (maxSpansPerTrace <= 0)
+            throw new IllegalArgumentException("maxSpansPerTrace");
+
+        this.tracer = tracer;
+        this.latencyThresholdMicros = unit.toMicros(latencyThreshold);
+        this.actorPaths = actorPaths;
+        this.buffers = new ArrayBlockingQueue<TraceBuffer>(maxTraces);
+        this.allBuffers = new TraceBuffer[maxTraces];
+        for (int i = 0; i < maxTraces; i++) {
+            allBuffers[i] = new TraceBuffer(maxSpansPerTrace);
+            buffers.offer(allBuffers[i]);
+        }
+    }
+
+    public long keptTraces() {
+        return keptTraces.sum();
+    }
+
+    /* Traces dropped by the decision, for lack of buffers, or reclaimed. */
+    public long droppedTraces() {
+        return droppedTraces.sum();
+    }
+
+    /* Traces dropped for lack of buffers, even after reclaiming. */
+    public long overflowedTraces() {
+        return overflowedTraces.sum();
+    }
+
+    /* Pending traces dropped before their local root finished, to reuse their buffers. */
+    public long reclaimedTraces() {
+        return reclaimedTraces.sum();
+    }
+
+    /* Spans overwritten by others of the same trace. */
+    public long evictedSpans() {
+        return evictedSpans.sum();
+    }
+
+    long nowMicros() {
+        return baseMicros + (System.nanoTime() - baseNanos) / 1000;
+    }
+
+    @Override
+    public ScopeManager scopeManager() {
+        // Only Spans of this Tracer get activated, and are finished through it.
+        return tracer.scopeManager();
+    }
+
+    @Override
+    public Span activeSpan() {
+        Scope scope = tracer.scopeManager().active();
+        return scope == null ? null : scope.span();
+    }
+
+    @Override
+    public SpanBuilder buildSpan(String operationName) {
+        return new Builder(tracer.buildSpan(operationName));
+    }
+
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        tracer.inject(spanContext, format, carrier);
+    }
+
+    @Override
+    public <C> SpanContext extract(Format<C> format, C carrier) {
+        return tracer.extract(format, carrier);
+    }
+
+    final class Builder implements SpanBuilder {
+        final SpanBuilder builder;
+        LocalTrace trace;
+        boolean ignoreActiveSpan;
+        boolean explicitParent;
+        long startMicros;
+        boolean error;
+        boolean matchedPath;
+
+        Builder(SpanBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public SpanBuilder asChildOf(SpanContext parent) {
+            explicitParent = true;
+            builder.asChildOf(parent);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder asChildOf(Span parent) {
+            if (parent instanceof TracedSpan) {
+                TracedSpan tracedParent = (TracedSpan)parent;
+                if (trace == null)
+                    trace = tracedParent.trace;
+
+                parent = tracedParent.span;
+            }
+
+            explicitParent = true;
+            builder.asChildOf(parent);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+            explicitParent = true;
+            builder.addReference(referenceType, referencedContext);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder ignoreActiveSpan() {
+            ignoreActiveSpan = true;
+            builder.ignoreActiveSpan();
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, String value) {
+            if (Constants.ACTOR_PATH.equals(key) && matches(value))
+                matchedPath = true;
+
+            builder.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, boolean value) {
+            if (value && Tags.ERROR.getKey().equals(key))
+                error = true;
+
+            builder.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, Number value) {
+            builder.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withStartTimestamp(long microseconds) {
+            startMicros = microseconds;
+            return this;
+        }
+
+        @Override
+        public Scope startActive(boolean finishSpanOnClose) {
+            return tracer.scopeManager().activate(startManual(), finishSpanOnClose);
+        }
+
+        @Override
+        @Deprecated
+        public Span start() {
+            return startManual();
+        }
+
+        @Override
+        public Span startManual() {
+            // Without explicit parents, the delegate Builder picks the active Span.
+            if (trace == null && !explicitParent && !ignoreActiveSpan) {
+                Span active = activeSpan();
+                if (active instanceof TracedSpan)
+                    trace = ((TracedSpan)active).trace;
+            }
+
+            boolean root = trace == null;
+            if (root)
+                trace = new LocalTrace();
+
+            // Started and finished on the same clock, as the decorated Tracer may use another one.
+            if (startMicros == 0)
+                startMicros = nowMicros();
+
+            TracedSpan span = new TracedSpan(builder.withStartTimestamp(startMicros).startManual(), trace,
+                    startMicros, root);
+            if (error)
+                trace.error = true;
+            if (matchedPath)
+                trace.matchedPath = true;
+
+            return span;
+        }
+    }
+
+    boolean matches(String actorPath) {
+        return actorPaths != null && actorPath != null && actorPaths.test(actorPath);
+    }
+
+    final class TracedSpan implements Span {
+        final Span span;
+        final LocalTrace trace;
+        final long startMicros;
+        final boolean root;
+
+        TracedSpan(Span span, LocalTrace trace, long startMicros, boolean root) {
+            this.span = span;
+            this.trace = trace;
+            this.startMicros = startMicros;
+            this.root = root;
+        }
+
+        @Override
+        public SpanContext context() {
+            return span.context();
+        }
+
+        @Override
+        public Span setTag(String key, String value) {
+            if (Constants.ACTOR_PATH.equals(key) && matches(value))
+                trace.matchedPath = true;
+
+            span.setTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, boolean value) {
+            if (value && Tags.ERROR.getKey().equals(key))
+                trace.error = true;
+
+            span.setTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, Number value) {
+            span.setTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Span log(Map<String, ?> fields) {
+            span.log(fields);
+            return this;
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+            span.log(timestampMicroseconds, fields);
+            return this;
+        }
+
+        @Override
+        public Span log(String event) {
+            span.log(event);
+            return this;
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, String event) {
+            span.log(timestampMicroseconds, event);
+            return this;
+        }
+
+        @Override
+        public Span setBaggageItem(String key, String value) {
+            span.setBaggageItem(key, value);
+            return this;
+        }
+
+        @Override
+        public String getBaggageItem(String key) {
+            return span.getBaggageItem(key);
+        }
+
+        @Override
+        public Span setOperationName(String operationName) {
+            span.setOperationName(operationName);
+            return this;
+        }
+
+        @Override
+        public void finish() {
+            finish(nowMicros());
+        }
+
+        @Override
+        public void finish(long finishMicros) {
+            trace.finished(this, finishMicros);
+        }
+    }
+
+    static final int PENDING = 0;
+    static final int KEPT = 1;
+    static final int DROPPED = 2;
+
+    /* Spans of a trace created in this process. */
+    final class LocalTrace {
+        TraceBuffer buffer;
+        int state = PENDING;
+        volatile boolean error;
+        volatile boolean matchedPath;
+
+        LocalTrace() {
+            TraceBuffer buffer = buffers.poll();
+            if (buffer == null)
+                buffer = TailSamplingTracer.this.reclaim();
+            if (buffer == null) {
+                overflowedTraces.increment();
+                return;
+            }
+
+            buffer.owner = this;
+            buffer.acquireTime = System.nanoTime();
+            this.buffer = buffer;
+        }
+
+        /* Releases the buffer of this trace if still pending, dropping it. */
+        synchronized boolean reclaim(TraceBuffer candidate) {
+            if (state != PENDING || buffer != candidate)
+                return false;
+
+            state = DROPPED;
+            buffer = null;
+            return true;
+        }
+
+        void finished(TracedSpan span, long finishMicros) {
+            boolean kept;
+            KeptSpans keptSpans = null;
+            synchronized (this) {
+                if (state == PENDING) {
+                    if (buffer != null && buffer.add(span, finishMicros))
+                        evictedSpans.increment();
+                    if (span.root)
+                        keptSpans = decide(finishMicros - span.startMicros);
+                }
+
+                kept = state == KEPT;
+            }
+
+            // Finished by the decorated Tracer outside the lock, as reporting them may block.
+            if (keptSpans != null)
+                keptSpans.finish();
+            else if (kept)
+                span.span.finish(finishMicros); // Late Span, following the decision.
+        }
+
+        /* Called with the lock held. Returns the buffered Spans to finish if the trace is kept. */
+        KeptSpans decide(long rootDurationMicros) {
+            if (buffer == null) {
+                state = DROPPED;
+                droppedTraces.increment();
+                return null;
+            }
+
+            KeptSpans keptSpans = null;
+            if (error || matchedPath || rootDurationMicros >= latencyThresholdMicros) {
+                state = KEPT;
+                keptTraces.increment();
+                keptSpans = buffer.copy();
+            } else {
+                state = DROPPED;
+                droppedTraces.increment();
+            }
+
+            buffer.clear();
+            buffers.offer(buffer);
+            buffer = null;
+            return keptSpans;
+        }
+    }
+
+    /* Takes the buffer of the oldest pending trace, or returns null if none could be taken. */
+    TraceBuffer reclaim() {
+        TraceBuffer oldest = null;
+        LocalTrace oldestOwner = null;
+        for (TraceBuffer buffer : allBuffers) {
+            LocalTrace owner = buffer.owner;
+            if (owner != null && (oldest == null || buffer.acquireTime - oldest.acquireTime < 0)) {
+                oldest = buffer;
+                oldestOwner = owner;
+            }
+        }
+
+        if (oldestOwner == null || !oldestOwner.reclaim(oldest))
+            return buffers.poll(); // Released meanwhile, maybe to the pool.
+
+        reclaimedTraces.increment();
+        droppedTraces.increment();
+        oldest.clear();
+        return oldest;
+    }
+
+    /* Preallocated ring of finished Spans, reused across traces. */
+    static final class TraceBuffer {
+        final TracedSpan[] spans;
+        final long[] finishMicros;
+        int count;
+
+        // Pending trace using this buffer, if any, guarded by its lock.
+        volatile LocalTrace owner;
+        volatile long acquireTime;
+
+        TraceBuffer(int capacity) {
+            spans = new TracedSpan[capacity];
+            finishMicros = new long[capacity];
+        }
+
+        /* Returns true if the oldest Span was overwritten. */
+        boolean add(TracedSpan span, long micros) {
+            int index = count % spans.length;
+            boolean evicted = count >= spans.length;
+            spans[index] = span;
+            finishMicros[index] = micros;
+            count++;
+            return evicted;
+        }
+
+        /* Copies the buffered Spans, oldest first, so the buffer can be reused right away. */
+        KeptSpans copy() {
+            int size = Math.min(count, spans.length);
+            int first = count - size;
+            KeptSpans keptSpans = new KeptSpans(size);
+            for (int i = 0; i < size; i++) {
+                int index = (first + i) % spans.length;
+                keptSpans.spans[i] = spans[index];
+                keptSpans.finishMicros[i] = finishMicros[index];
+            }
+
+            return keptSpans;
+        }
+
+        void clear() {
+            for (int i = 0; i < spans.length; i++)
+                spans[i] = null;
+
+            count = 0;
+            owner = null;
+        }
+    }
+
+    /* Spans of a kept trace, copied out of its buffer to be finished without holding its lock. */
+    static final class KeptSpans {
+        final TracedSpan[] spans;
+        final long[] finishMicros;
+
+        KeptSpans(int size) {
+            spans = new TracedSpan[size];
+            finishMicros = new long[size];
+        }
+
+        void finish() {
+            for (int i = 0; i < spans.length; i++)
+                spans[i].span.finish(finishMicros[i]);
+        }
+    }
+}
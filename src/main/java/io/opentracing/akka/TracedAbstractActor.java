@@ -1,23 +1,64 @@
 package io.opentracing.akka;
 
+import java.util.concurrent.TimeUnit;
+
 import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
 import scala.PartialFunction;
+import scala.concurrent.duration.FiniteDuration;
 import scala.runtime.BoxedUnit;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracer;
 import io.opentracing.util.GlobalTracer;
 
 public abstract class TracedAbstractActor extends AbstractActor {
     Tracer tracer;
+    PropagationPolicy policy;
+    boolean noopTracer;
+    ActorMetrics metrics;
+    DeadlinePolicy deadlinePolicy;
+    SlowReceivePolicy slowReceivePolicy;
+    MessageSamplingPolicy samplingPolicy;
+    ReceiveSummary summary;
+    boolean flushScheduled;
+
+    // Current message measurements, if metrics are enabled.
+    ActorMetrics.Recorder recorder;
+    long receiveStart;
+    long queueTime;
+
+    // Span of the current message, only kept while a JFR receive event is being recorded.
+    boolean recordingReceive;
+    Span receivedSpan;
 
     public TracedAbstractActor() {
         this(GlobalTracer.get());
     }
 
     public TracedAbstractActor(Tracer tracer) {
+        this(tracer, PropagationPolicy.SKIP_NOOP);
+    }
+
+    public TracedAbstractActor(Tracer tracer, PropagationPolicy policy) {
+        this(tracer, new TracedActorSettings().withPropagationPolicy(policy));
+    }
+
+    public TracedAbstractActor(Tracer tracer, TracedActorSettings settings) {
+        if (settings == null)
+            throw new IllegalArgumentException("settings");
+
         this.tracer = tracer;
+        this.policy = settings.propagationPolicy();
+        this.noopTracer = tracer instanceof NoopTracer;
+        this.metrics = settings.metrics();
+        this.deadlinePolicy = settings.deadlinePolicy();
+        this.slowReceivePolicy = settings.slowReceivePolicy();
+        this.samplingPolicy = settings.samplingPolicy();
+        this.summary = settings.coalescingPolicy() == null ? null : new ReceiveSummary(settings.coalescingPolicy());
     }
 
     protected Tracer tracer() {
@@ -26,17 +67,224 @@ public abstract class TracedAbstractActor extends AbstractActor {
 
     @Override
     public void aroundReceive(PartialFunction<Object, BoxedUnit> receive, Object message) {
+        if (message == FlushSummary.INSTANCE) {
+            flushSummary();
+            return;
+        }
+
+        Object event = JfrEvents.beginReceive();
+        if (event == null) {
+            receiveMetered(receive, message);
+            return;
+        }
+
+        recordingReceive = true;
+        try {
+            receiveMetered(receive, message);
+        } finally {
+            Object originalMessage = message instanceof TracedMessage ? ((TracedMessage<?>)message).message() : message;
+            JfrEvents.commitReceive(event, getSelf().path(), originalMessage, receivedSpan);
+            recordingReceive = false;
+            receivedSpan = null;
+        }
+    }
+
+    void receiveMetered(PartialFunction<Object, BoxedUnit> receive, Object message) {
+        if (metrics == null) {
+            receiveTraced(receive, message);
+            return;
+        }
+
+        if (recorder == null) {
+            recorder = metrics.recorder(getSelf().path().toString());
+            if (metrics.flightRecorder() != null)
+                metrics.flightRecorder().register(getContext().getSystem());
+        }
+
+        receiveStart = System.nanoTime();
+        queueTime = -1;
+        if (message instanceof TracedMessage) {
+            long enqueueTime = ((TracedMessage<?>)message).enqueueTime();
+            if (enqueueTime != 0) {
+                queueTime = receiveStart - enqueueTime;
+                recorder.recordQueueTime(queueTime);
+            }
+        }
+
+        try {
+            receiveTraced(receive, message);
+        } finally {
+            recorder.recordProcessingTime(System.nanoTime() - receiveStart);
+        }
+    }
+
+    @SuppressWarnings("try") // The Scope is only closed.
+    void receiveTraced(PartialFunction<Object, BoxedUnit> receive, Object message) {
         if (!(message instanceof TracedMessage)) {
             super.aroundReceive(receive, message);
             return;
         }
 
-        TracedMessage tracedMessage = (TracedMessage)message;
+        TracedMessage<?> tracedMessage = (TracedMessage<?>)message;
         Span span = tracedMessage.activeSpan();
         Object originalMessage = tracedMessage.message();
 
-        try (Scope scope = tracer.scopeManager().activate(span, false)) {
+        if (span == null) {
+            receiveRemote(receive, tracedMessage);
+            return;
+        }
+
+        if (deadlinePolicy != null && expired(DeadlinePolicy.deadline(span), originalMessage))
+            return;
+
+        if (noopTracer || !policy.shouldPropagate(span) || !sampled(originalMessage)) {
             super.aroundReceive(receive, originalMessage);
+            return;
+        }
+
+        try (Scope scope = tracer.scopeManager().activate(span, false)) {
+            if (summary != null)
+                receiveCoalesced(receive, originalMessage, span);
+            else if (slowReceivePolicy == null)
+                receiveActive(receive, originalMessage, span);
+            else
+                receiveMeasured(receive, originalMessage, span);
+        }
+    }
+
+    void receiveCoalesced(PartialFunction<Object, BoxedUnit> receive, Object message, Span span) {
+        long start = System.nanoTime();
+        Class<?> messageClass = message.getClass();
+        if (!summary.accepts(messageClass, span, start)) {
+            summary.finish(tracer, getSelf().path().toString());
+            summary.start(messageClass, span, start);
+
+            // Records the summary even if no other message arrives.
+            if (!flushScheduled)
+                scheduleFlush(summary.policy.windowNanos);
+        }
+
+        try {
+            receiveActive(receive, message, span);
+        } finally {
+            summary.record(start, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void aroundPostStop() {
+        try {
+            super.aroundPostStop();
+        } finally {
+            if (summary != null)
+                summary.finish(tracer, getSelf().path().toString());
+        }
+    }
+
+    void flushSummary() {
+        flushScheduled = false;
+        if (summary == null)
+            return;
+
+        long now = System.nanoTime();
+        if (summary.expired(now))
+            summary.finish(tracer, getSelf().path().toString());
+        else if (summary.parent != null)
+            scheduleFlush(summary.startNanos + summary.policy.windowNanos - now);
+    }
+
+    /* A single flush is kept pending per actor, re-armed for the current summary when it fires. */
+    void scheduleFlush(long delayNanos) {
+        flushScheduled = true;
+        getContext().getSystem().scheduler().scheduleOnce(FiniteDuration.create(delayNanos, TimeUnit.NANOSECONDS), getSelf(),
+                FlushSummary.INSTANCE, getContext().dispatcher(), ActorRef.noSender());
+    }
+
+    /* Sent to self to record the current summary once its window has elapsed. */
+    static final class FlushSummary {
+        static final FlushSummary INSTANCE = new FlushSummary();
+
+        private FlushSummary() {
+        }
+    }
+
+    void receiveMeasured(PartialFunction<Object, BoxedUnit> receive, Object message, Span span) {
+        long start = System.nanoTime();
+        try {
+            receiveActive(receive, message, span);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= slowReceivePolicy.thresholdNanos(message.getClass()))
+                recordSlowReceive(message, span, start, elapsed);
+        }
+    }
+
+    /* Materializes the child Span of a slow message, backdated to the start of processing. */
+    void recordSlowReceive(Object message, Span parent, long start, long elapsed) {
+        tracer.buildSpan(Constants.RECEIVE_OPERATION_NAME)
+            .asChildOf(parent)
+            .withStartTimestamp(MicrosClock.micros(start))
+            .withTag(Constants.ACTOR_PATH, getSelf().path().toString())
+            .withTag(Constants.MESSAGE_TYPE, message.getClass().getName())
+            .withTag(Constants.PROCESSING_TIME, elapsed)
+            .start()
+            .finish(MicrosClock.micros(start + elapsed));
+    }
+
+    /* Received from a remote system, or a link: only its SpanContext is available, so a Span is created. */
+    void receiveRemote(PartialFunction<Object, BoxedUnit> receive, TracedMessage<?> tracedMessage) {
+        // Decided first, so untraced messages need no extraction unless checking deadlines.
+        boolean sampled = sampled(tracedMessage.message());
+        SpanContext spanContext = noopTracer || (!sampled && deadlinePolicy == null)
+            ? null
+            : tracedMessage.spanContext();
+        if (spanContext == null) {
+            super.aroundReceive(receive, tracedMessage.message());
+            return;
+        }
+
+        if (deadlinePolicy != null && expired(DeadlinePolicy.deadline(spanContext), tracedMessage.message()))
+            return;
+
+        if (!sampled) {
+            super.aroundReceive(receive, tracedMessage.message());
+            return;
+        }
+
+        try (Scope scope = tracedMessage.startReceive(tracer, spanContext)) {
+            receiveActive(receive, tracedMessage.message(), scope.span());
+        }
+    }
+
+    boolean sampled(Object message) {
+        return samplingPolicy == null || samplingPolicy.shouldTrace(message.getClass());
+    }
+
+    boolean expired(long deadline, Object message) {
+        return deadlinePolicy.shed(deadline, getContext().getSystem(), message, getSender(), getSelf());
+    }
+
+    void receiveActive(PartialFunction<Object, BoxedUnit> receive, Object message, Span span) {
+        if (recordingReceive)
+            receivedSpan = span;
+
+        if (metrics == null || (!metrics.tagSpans() && metrics.flightRecorder() == null)) {
+            super.aroundReceive(receive, message);
+            return;
+        }
+
+        try {
+            super.aroundReceive(receive, message);
+        } finally {
+            long receiveEnd = System.nanoTime();
+            recorder.recordReceive(span, message, queueTime, receiveStart, receiveEnd);
+
+            if (metrics.tagSpans()) {
+                span.setTag(Constants.ACTOR_PATH, getSelf().path().toString());
+                if (queueTime >= 0)
+                    span.setTag(Constants.QUEUE_TIME, queueTime);
+                span.setTag(Constants.PROCESSING_TIME, receiveEnd - receiveStart);
+            }
         }
     }
 }
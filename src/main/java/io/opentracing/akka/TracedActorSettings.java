@@ -0,0 +1,114 @@
+package io.opentracing.akka;
+
+/**
+ * Optional behavior of a {@link TracedAbstractActor}, all of it disabled by default
+ * (besides propagating every non-noop Span). Instances are immutable, each
+ * {@code with} method returning an updated copy:
+ *
+ * <pre>
+ * TracedActorSettings settings = new TracedActorSettings()
+ *     .withMetrics(metrics)
+ *     .withDeadlinePolicy(deadlinePolicy);
+ * </pre>
+ */
+public final class TracedActorSettings {
+    final PropagationPolicy policy;
+    final ActorMetrics metrics;
+    final DeadlinePolicy deadlinePolicy;
+    final SlowReceivePolicy slowReceivePolicy;
+    final MessageSamplingPolicy samplingPolicy;
+    final CoalescingPolicy coalescingPolicy;
+
+    public TracedActorSettings() {
+        this(PropagationPolicy.SKIP_NOOP, null, null, null, null, null);
+    }
+
+    private TracedActorSettings(PropagationPolicy policy, ActorMetrics metrics, DeadlinePolicy deadlinePolicy,
+            SlowReceivePolicy slowReceivePolicy, MessageSamplingPolicy samplingPolicy,
+            CoalescingPolicy coalescingPolicy) {
+        this.policy = policy;
+        this.metrics = metrics;
+        this.deadlinePolicy = deadlinePolicy;
+        this.slowReceivePolicy = slowReceivePolicy;
+        this.samplingPolicy = samplingPolicy;
+        this.coalescingPolicy = coalescingPolicy;
+    }
+
+    public PropagationPolicy propagationPolicy() {
+        return policy;
+    }
+
+    public ActorMetrics metrics() {
+        return metrics;
+    }
+
+    public DeadlinePolicy deadlinePolicy() {
+        return deadlinePolicy;
+    }
+
+    public SlowReceivePolicy slowReceivePolicy() {
+        return slowReceivePolicy;
+    }
+
+    public MessageSamplingPolicy samplingPolicy() {
+        return samplingPolicy;
+    }
+
+    public CoalescingPolicy coalescingPolicy() {
+        return coalescingPolicy;
+    }
+
+    public TracedActorSettings withPropagationPolicy(PropagationPolicy policy) {
+        if (policy == null)
+            throw new IllegalArgumentException("policy");
+
+        return new TracedActorSettings(policy, metrics, deadlinePolicy, slowReceivePolicy, samplingPolicy,
+                coalescingPolicy);
+    }
+
+    /**
+     * @param metrics where queue and processing times are recorded under the actor's path,
+     *                or null to not record them.
+     */
+    public TracedActorSettings withMetrics(ActorMetrics metrics) {
+        return new TracedActorSettings(policy, metrics, deadlinePolicy, slowReceivePolicy, samplingPolicy,
+                coalescingPolicy);
+    }
+
+    /**
+     * @param deadlinePolicy how to skip messages whose Span deadline has passed,
+     *                       or null to process all of them.
+     */
+    public TracedActorSettings withDeadlinePolicy(DeadlinePolicy deadlinePolicy) {
+        return new TracedActorSettings(policy, metrics, deadlinePolicy, slowReceivePolicy, samplingPolicy,
+                coalescingPolicy);
+    }
+
+    /**
+     * @param slowReceivePolicy when to record a child Span for slowly processed messages,
+     *                          or null to not record any.
+     */
+    public TracedActorSettings withSlowReceivePolicy(SlowReceivePolicy slowReceivePolicy) {
+        return new TracedActorSettings(policy, metrics, deadlinePolicy, slowReceivePolicy, samplingPolicy,
+                coalescingPolicy);
+    }
+
+    /**
+     * @param samplingPolicy which received messages are traced, by message class, or null to
+     *                       trace all of them. Untraced messages are processed without any
+     *                       active Span, although deadlines are still honored.
+     */
+    public TracedActorSettings withSamplingPolicy(MessageSamplingPolicy samplingPolicy) {
+        return new TracedActorSettings(policy, metrics, deadlinePolicy, slowReceivePolicy, samplingPolicy,
+                coalescingPolicy);
+    }
+
+    /**
+     * @param coalescingPolicy how to collapse consecutive similar messages into summary Spans,
+     *                         or null to not do it. Takes precedence over the slow receive policy.
+     */
+    public TracedActorSettings withCoalescingPolicy(CoalescingPolicy coalescingPolicy) {
+        return new TracedActorSettings(policy, metrics, deadlinePolicy, slowReceivePolicy, samplingPolicy,
+                coalescingPolicy);
+    }
+}
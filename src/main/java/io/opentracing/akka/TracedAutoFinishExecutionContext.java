@@ -1,41 +1,74 @@
 package io.opentracing.akka;
 
-import akka.actor.ActorRef;
-import akka.actor.ActorSystem;
-import akka.dispatch.OnComplete;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import akka.dispatch.Batchable;
 import scala.concurrent.ExecutionContext;
 import scala.concurrent.ExecutionContextExecutor;
 
 import io.opentracing.Scope;
-import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.tag.Tags;
+import io.opentracing.noop.NoopTracer;
 import io.opentracing.util.GlobalTracer;
 
 public final class TracedAutoFinishExecutionContext implements ExecutionContextExecutor {
     final ExecutionContext ec;
     final Tracer tracer;
+    final PropagationPolicy policy;
+    final DeadlinePolicy deadlinePolicy;
+    final ExecutionMetrics metrics;
+    final boolean noopTracer;
+    final boolean batching;
 
     public TracedAutoFinishExecutionContext(ExecutionContext ec) {
         this(ec, GlobalTracer.get());
     }
 
     public TracedAutoFinishExecutionContext(ExecutionContext ec, Tracer tracer) {
+        this(ec, tracer, new TracedExecutionSettings());
+    }
+
+    public TracedAutoFinishExecutionContext(ExecutionContext ec, Tracer tracer, TracedExecutionSettings settings) {
         if (ec == null)
             throw new IllegalArgumentException("ec");
         if (tracer == null)
             throw new IllegalArgumentException("tracer");
+        if (settings == null || settings.createSpans())
+            throw new IllegalArgumentException("settings");
 
         this.ec = ec;
         this.tracer = tracer;
+        this.policy = settings.propagationPolicy();
+        this.deadlinePolicy = settings.deadlinePolicy();
+        this.metrics = settings.metrics();
+        this.noopTracer = tracer instanceof NoopTracer;
+        this.batching = TracedTaskBatch.isBatching(ec);
     }
 
     @Override
     public ExecutionContext prepare() {
-        if (tracer.scopeManager().active() == null)
+        AutoFinishScope captured = activeScope();
+        if (captured == null)
             return ec; // Nothing to propagate/do.
 
-        return new TracedAutoFinishExecutionContextImpl();
+        return metrics == null
+            ? new TracedAutoFinishExecutionContextImpl(captured)
+            : new MeasuredTracedAutoFinishExecutionContextImpl(captured);
+    }
+
+    /* The active Scope if it should be propagated, or null otherwise. */
+    AutoFinishScope activeScope() {
+        if (noopTracer)
+            return null;
+
+        Scope scope = tracer.scopeManager().active();
+        if (scope == null || !policy.shouldPropagate(scope.span()))
+            return null;
+
+        if (!(scope instanceof AutoFinishScope))
+            throw new IllegalStateException("Usage of AutoFinishScopeManager required.");
+
+        return (AutoFinishScope)scope;
     }
 
     @Override
@@ -48,33 +81,154 @@ public final class TracedAutoFinishExecutionContext implements ExecutionContextE
         ec.reportFailure(cause);
     }
 
-    class TracedAutoFinishExecutionContextImpl implements ExecutionContextExecutor {
-        AutoFinishScope.Continuation continuation;
-
-        public TracedAutoFinishExecutionContextImpl() {
-            Scope scope = tracer.scopeManager().active();
-            if (!(scope instanceof AutoFinishScope))
-                throw new IllegalStateException("Usage of AutoFinishScopeManager required.");
+    /*
+     * The prepared context doubles as both the captured continuation and the task
+     * submitted to the wrapped ExecutionContext, avoiding the Continuation and
+     * Runnable wrapper allocations per callback.
+     *
+     * It is Batchable whenever the wrapped Runnable is, so batching dispatchers keep
+     * running chained callbacks on the same thread.
+     */
+    class TracedAutoFinishExecutionContextImpl
+            implements ExecutionContextExecutor, Batchable, TracedTaskBatch.Task {
+        final AutoFinishScope captured;
+        volatile Runnable runnable;
 
-            continuation = ((AutoFinishScope)scope).capture();
+        public TracedAutoFinishExecutionContextImpl(AutoFinishScope captured) {
+            captured.retain();
+            this.captured = captured;
         }
 
         @Override
         public void execute(Runnable runnable) {
+            long submitTime = metrics == null ? 0 : System.nanoTime();
+
+            if (RUNNABLE_UPDATER.compareAndSet(this, null, runnable)) {
+                submitted(submitTime);
+                if (!batching || !TracedTaskBatch.current().offer(TracedAutoFinishExecutionContext.this,
+                            captured.span(), this))
+                    ec.execute(this);
+
+                return;
+            }
+
+            // Prepared context reused for more than one task: each one needs its own reference.
+            AutoFinishScope.Continuation continuation = captured.capture();
             ec.execute(new Runnable() {
                 @Override
                 public void run() {
-                    //try (Scope scope = tracer.scopeManager().activate(span, true)) {
                     try (Scope scope = continuation.activate()) {
-                        runnable.run();
+                        if (!expired(runnable))
+                            runMeasured(runnable, submitTime);
                     }
                 }
             });
         }
 
+        /* Submission time, only kept by MeasuredTracedAutoFinishExecutionContextImpl. */
+        long submitTime() {
+            return 0;
+        }
+
+        void submitted(long submitTime) {
+        }
+
+        @Override
+        public boolean isBatchable() {
+            return TracedTaskBatch.isBatchable(runnable);
+        }
+
+        @Override
+        public void run() {
+            if (!batching) {
+                try (Scope scope = captured.reactivate()) {
+                    if (!expired(runnable))
+                        runMeasured(runnable, submitTime());
+                }
+                return;
+            }
+
+            TracedTaskBatch batch = TracedTaskBatch.current();
+            Object key = captured.span();
+            boolean batchOwner = batch.begin(TracedAutoFinishExecutionContext.this, key);
+
+            try {
+                try (Scope scope = captured.reactivate()) {
+                    // Run the chained callbacks for this Span under the same Scope.
+                    if (batchOwner)
+                        batch.run(this);
+                    else
+                        runOwner();
+                }
+            } finally {
+                if (batchOwner)
+                    batch.end(key);
+            }
+        }
+
+        @Override
+        public void runOwner() {
+            if (!expired(runnable))
+                runMeasured(runnable, submitTime());
+        }
+
+        @Override
+        public void runInline() {
+            // The batch's Scope keeps its own reference, so this never finishes the Span.
+            try {
+                runOwner();
+            } finally {
+                captured.release();
+            }
+        }
+
+        void runMeasured(Runnable runnable, long submitTime) {
+            Object event = JfrEvents.beginExecute();
+            try {
+                if (metrics == null)
+                    runnable.run();
+                else
+                    metrics.run(runnable, captured.span(), submitTime);
+            } finally {
+                if (event != null)
+                    JfrEvents.commitExecute(event, captured.span());
+            }
+        }
+
+        boolean expired(Runnable runnable) {
+            return deadlinePolicy != null && deadlinePolicy.shed(captured.span(), runnable, ec);
+        }
+
+        @Override
+        public void resubmit() {
+            ec.execute(this);
+        }
+
         @Override
         public void reportFailure(Throwable cause) {
             ec.reportFailure(cause);
         }
     }
+
+    /* Only allocated with metrics enabled, keeping the common context small. */
+    final class MeasuredTracedAutoFinishExecutionContextImpl extends TracedAutoFinishExecutionContextImpl {
+        long submitTime;
+
+        MeasuredTracedAutoFinishExecutionContextImpl(AutoFinishScope captured) {
+            super(captured);
+        }
+
+        @Override
+        long submitTime() {
+            return submitTime;
+        }
+
+        @Override
+        void submitted(long submitTime) {
+            this.submitTime = submitTime;
+        }
+    }
+
+    static final AtomicReferenceFieldUpdater<TracedAutoFinishExecutionContextImpl, Runnable> RUNNABLE_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(TracedAutoFinishExecutionContextImpl.class, Runnable.class, "runnable");
 }
@@ -0,0 +1,66 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.dispatch.Dispatcher;
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceFactoryProvider;
+import akka.dispatch.Mailbox;
+import akka.dispatch.MessageDispatcher;
+import akka.dispatch.MessageDispatcherConfigurator;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+/**
+ * {@link MessageDispatcherConfigurator} for a regular {@link Dispatcher} (with any of
+ * the supported executors) that closes the {@link io.opentracing.Scope} left active by
+ * {@link TracedMessageQueue} once each mailbox run is done, so it does not leak into
+ * whatever runs next on the same thread. See {@link TracedMailboxType}.
+ *
+ * Mailboxes are submitted as they are (keeping their {@code ForkJoinTask} identity):
+ * the Scope is closed when a mailbox run reschedules itself, which always happens on
+ * the thread that ran it.
+ */
+public class TracedDispatcherConfigurator extends MessageDispatcherConfigurator {
+    private final Dispatcher instance;
+
+    public TracedDispatcherConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+
+        long deadlineNanos = config.getDuration("throughput-deadline-time", TimeUnit.NANOSECONDS);
+        Duration throughputDeadlineTime = deadlineNanos > 0 ? Duration.fromNanos(deadlineNanos) : Duration.Zero();
+        FiniteDuration shutdownTimeout = Duration.create(
+                config.getDuration("shutdown-timeout", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+
+        instance = new ScopeClosingDispatcher(this,
+                config.getString("id"),
+                config.getInt("throughput"),
+                throughputDeadlineTime,
+                configureExecutor(),
+                shutdownTimeout);
+    }
+
+    @Override
+    public MessageDispatcher dispatcher() {
+        return instance;
+    }
+
+    static final class ScopeClosingDispatcher extends Dispatcher {
+        ScopeClosingDispatcher(MessageDispatcherConfigurator configurator, String id, int throughput,
+                Duration throughputDeadlineTime, ExecutorServiceFactoryProvider executorServiceFactoryProvider,
+                FiniteDuration shutdownTimeout) {
+            super(configurator, id, throughput, throughputDeadlineTime, executorServiceFactoryProvider,
+                    shutdownTimeout);
+        }
+
+        @Override
+        public boolean registerForExecution(Mailbox mailbox, boolean hasMessageHint, boolean hasSystemMessageHint) {
+            // Without hints, this is the end of a mailbox run (or a resume, whose Scope is not ours).
+            if (!hasMessageHint && !hasSystemMessageHint && mailbox.messageQueue() instanceof TracedMessageQueue)
+                ((TracedMessageQueue)mailbox.messageQueue()).closeScope();
+
+            return super.registerForExecution(mailbox, hasMessageHint, hasSystemMessageHint);
+        }
+    }
+}
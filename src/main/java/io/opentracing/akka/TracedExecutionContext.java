@@ -1,21 +1,27 @@
 package io.opentracing.akka;
 
-import akka.actor.ActorRef;
-import akka.actor.ActorSystem;
-import akka.dispatch.OnComplete;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import akka.dispatch.Batchable;
 import scala.concurrent.ExecutionContext;
 import scala.concurrent.ExecutionContextExecutor;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.tag.Tags;
+import io.opentracing.noop.NoopTracer;
 import io.opentracing.util.GlobalTracer;
 
 public final class TracedExecutionContext implements ExecutionContextExecutor {
     final ExecutionContext ec;
     final Tracer tracer;
     final boolean createSpans;
+    final PropagationPolicy policy;
+    final DeadlinePolicy deadlinePolicy;
+    final ExecutionMetrics metrics;
+    final boolean lazySpans;
+    final boolean noopTracer;
+    final boolean batching;
 
     public TracedExecutionContext(ExecutionContext ec) {
         this(ec, GlobalTracer.get(), false);
@@ -26,22 +32,52 @@ public final class TracedExecutionContext implements ExecutionContextExecutor {
     }
 
     public TracedExecutionContext(ExecutionContext ec, Tracer tracer, boolean createSpans) {
+        this(ec, tracer, new TracedExecutionSettings().withCreateSpans(createSpans));
+    }
+
+    public TracedExecutionContext(ExecutionContext ec, Tracer tracer, TracedExecutionSettings settings) {
         if (ec == null)
             throw new IllegalArgumentException("ec");
         if (tracer == null)
             throw new IllegalArgumentException("tracer");
+        if (settings == null)
+            throw new IllegalArgumentException("settings");
 
         this.ec = ec;
         this.tracer = tracer;
-        this.createSpans = createSpans;
+        this.createSpans = settings.createSpans();
+        this.policy = settings.propagationPolicy();
+        this.deadlinePolicy = settings.deadlinePolicy();
+        this.metrics = settings.metrics();
+        this.lazySpans = createSpans && settings.lazySpans();
+        this.noopTracer = tracer instanceof NoopTracer;
+
+        // Created Spans are owned by a single task, so there is nothing to share.
+        this.batching = !createSpans && TracedTaskBatch.isBatching(ec);
     }
 
     @Override
     public ExecutionContext prepare() {
-        if (!createSpans && tracer.scopeManager().active() == null)
+        if (noopTracer)
             return ec; // Nothing to propagate/do.
 
-        return new TracedExecutionContextImpl();
+        Scope scope = tracer.scopeManager().active();
+        if (scope == null) {
+            if (!createSpans)
+                return ec; // Nothing to propagate/do.
+
+            return newContext(null);
+        }
+
+        Span span = scope.span();
+        if (!policy.shouldPropagate(span))
+            return ec;
+
+        return newContext(span);
+    }
+
+    TracedExecutionContextImpl newContext(Span span) {
+        return metrics == null ? new TracedExecutionContextImpl(span) : new MeasuredTracedExecutionContextImpl(span);
     }
 
     @Override
@@ -54,34 +90,172 @@ public final class TracedExecutionContext implements ExecutionContextExecutor {
         ec.reportFailure(cause);
     }
 
-    class TracedExecutionContextImpl implements ExecutionContextExecutor {
-        Span activeSpan;
+    /*
+     * The prepared context doubles as the task submitted to the wrapped ExecutionContext,
+     * so the common case (a Future callback preparing the context and executing a single
+     * Runnable on it) allocates this object and the activated Scope only.
+     *
+     * It is Batchable whenever the wrapped Runnable is, so batching dispatchers keep
+     * running chained callbacks on the same thread.
+     */
+    class TracedExecutionContextImpl implements ExecutionContextExecutor, Batchable, TracedTaskBatch.Task {
+        final Span activeSpan;
+        volatile Runnable runnable;
 
-        public TracedExecutionContextImpl() {
-            if (createSpans)
+        public TracedExecutionContextImpl(Span parentSpan) {
+            // Created Spans implicitly become children of the active one, if any.
+            // Lazily created ones keep the parent around instead.
+            if (createSpans && !lazySpans)
                 activeSpan = tracer.buildSpan(Constants.EXECUTE_OPERATION_NAME).startManual();
             else
-                activeSpan = tracer.scopeManager().active().span();
+                activeSpan = parentSpan;
         }
 
         @Override
         public void execute(Runnable runnable) {
+            long submitTime = metrics == null ? 0 : System.nanoTime();
+
+            if (RUNNABLE_UPDATER.compareAndSet(this, null, runnable)) {
+                submitted(submitTime);
+                if (!batching || !TracedTaskBatch.current().offer(TracedExecutionContext.this, activeSpan, this))
+                    ec.execute(this);
+
+                return;
+            }
+
+            // Prepared context reused for more than one task: wrap them separately.
             ec.execute(new Runnable() {
                 @Override
                 public void run() {
-                    // Only deactivate the active Span if we created/own it.
-                    boolean deactivate = createSpans;
-
-                    try (Scope scope = tracer.scopeManager().activate(activeSpan, deactivate)) {
-                        runnable.run();
-                    }
+                    runActivated(runnable, submitTime);
                 }
             });
         }
 
+        /* Submission time, only kept by MeasuredTracedExecutionContextImpl. */
+        long submitTime() {
+            return 0;
+        }
+
+        void submitted(long submitTime) {
+        }
+
+        @Override
+        public boolean isBatchable() {
+            return TracedTaskBatch.isBatchable(runnable);
+        }
+
+        @Override
+        public void run() {
+            if (!batching) {
+                runActivated(runnable, submitTime());
+                return;
+            }
+
+            TracedTaskBatch batch = TracedTaskBatch.current();
+            boolean batchOwner = batch.begin(TracedExecutionContext.this, activeSpan);
+
+            try {
+                try (Scope scope = tracer.scopeManager().activate(activeSpan, false)) {
+                    // Run the chained callbacks for this Span under the same Scope.
+                    if (batchOwner)
+                        batch.run(this);
+                    else
+                        runOwner();
+                }
+            } finally {
+                if (batchOwner)
+                    batch.end(activeSpan);
+            }
+        }
+
+        void runActivated(Runnable runnable, long submitTime) {
+            if (lazySpans) {
+                runLazy(runnable, submitTime);
+                return;
+            }
+
+            // Only deactivate the active Span if we created/own it.
+            boolean deactivate = createSpans;
+
+            try (Scope scope = tracer.scopeManager().activate(activeSpan, deactivate)) {
+                if (!expired(runnable))
+                    runMeasured(runnable, activeSpan, submitTime);
+            }
+        }
+
+        /* Creates the Span right before running the task, activeSpan being its parent (if any). */
+        void runLazy(Runnable runnable, long submitTime) {
+            if (activeSpan != null && expired(runnable))
+                return;
+
+            Tracer.SpanBuilder builder = tracer.buildSpan(Constants.EXECUTE_OPERATION_NAME).ignoreActiveSpan();
+            if (activeSpan != null)
+                builder.asChildOf(activeSpan);
+
+            try (Scope scope = builder.startActive(true)) {
+                runMeasured(runnable, scope.span(), submitTime);
+            }
+        }
+
+        @Override
+        public void runOwner() {
+            if (!expired(runnable))
+                runMeasured(runnable, activeSpan, submitTime());
+        }
+
+        @Override
+        public void runInline() {
+            runOwner();
+        }
+
+        void runMeasured(Runnable runnable, Span span, long submitTime) {
+            Object event = JfrEvents.beginExecute();
+            try {
+                if (metrics == null)
+                    runnable.run();
+                else
+                    metrics.run(runnable, span, submitTime);
+            } finally {
+                if (event != null)
+                    JfrEvents.commitExecute(event, span);
+            }
+        }
+
+        boolean expired(Runnable runnable) {
+            return deadlinePolicy != null && deadlinePolicy.shed(activeSpan, runnable, ec);
+        }
+
+        @Override
+        public void resubmit() {
+            ec.execute(this);
+        }
+
         @Override
         public void reportFailure(Throwable cause) {
             ec.reportFailure(cause);
         }
     }
+
+    /* Only allocated with metrics enabled, keeping the common context small. */
+    final class MeasuredTracedExecutionContextImpl extends TracedExecutionContextImpl {
+        long submitTime;
+
+        MeasuredTracedExecutionContextImpl(Span parentSpan) {
+            super(parentSpan);
+        }
+
+        @Override
+        long submitTime() {
+            return submitTime;
+        }
+
+        @Override
+        void submitted(long submitTime) {
+            this.submitTime = submitTime;
+        }
+    }
+
+    static final AtomicReferenceFieldUpdater<TracedExecutionContextImpl, Runnable> RUNNABLE_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(TracedExecutionContextImpl.class, Runnable.class, "runnable");
 }
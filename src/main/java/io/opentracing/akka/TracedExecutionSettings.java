@@ -0,0 +1,94 @@
+package io.opentracing.akka;
+
+/**
+ * Optional behavior of a {@link TracedExecutionContext} or a {@link TracedAutoFinishExecutionContext},
+ * all of it disabled by default (besides propagating every non-noop Span). Instances are immutable,
+ * each {@code with} method returning an updated copy:
+ *
+ * <pre>
+ * TracedExecutionSettings settings = new TracedExecutionSettings()
+ *     .withCreateSpans(true)
+ *     .withMetrics(metrics);
+ * </pre>
+ */
+public final class TracedExecutionSettings {
+    final boolean createSpans;
+    final boolean lazySpans;
+    final PropagationPolicy policy;
+    final DeadlinePolicy deadlinePolicy;
+    final ExecutionMetrics metrics;
+
+    public TracedExecutionSettings() {
+        this(false, false, PropagationPolicy.SKIP_NOOP, null, null);
+    }
+
+    private TracedExecutionSettings(boolean createSpans, boolean lazySpans, PropagationPolicy policy,
+            DeadlinePolicy deadlinePolicy, ExecutionMetrics metrics) {
+        this.createSpans = createSpans;
+        this.lazySpans = lazySpans;
+        this.policy = policy;
+        this.deadlinePolicy = deadlinePolicy;
+        this.metrics = metrics;
+    }
+
+    public boolean createSpans() {
+        return createSpans;
+    }
+
+    public boolean lazySpans() {
+        return lazySpans;
+    }
+
+    public PropagationPolicy propagationPolicy() {
+        return policy;
+    }
+
+    public DeadlinePolicy deadlinePolicy() {
+        return deadlinePolicy;
+    }
+
+    public ExecutionMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @param createSpans whether to create a Span for each task, child of the active one (if any).
+     *                    Only supported by {@link TracedExecutionContext}.
+     */
+    public TracedExecutionSettings withCreateSpans(boolean createSpans) {
+        return new TracedExecutionSettings(createSpans, lazySpans, policy, deadlinePolicy, metrics);
+    }
+
+    /**
+     * @param lazySpans with createSpans, whether to create each Span on the worker thread right
+     *                  before running its task, instead of upon prepare() on the submitting thread.
+     *                  Spans then exclude the queueing time, and are not created at all for tasks
+     *                  never run (or skipped for their deadline).
+     */
+    public TracedExecutionSettings withLazySpans(boolean lazySpans) {
+        return new TracedExecutionSettings(createSpans, lazySpans, policy, deadlinePolicy, metrics);
+    }
+
+    public TracedExecutionSettings withPropagationPolicy(PropagationPolicy policy) {
+        if (policy == null)
+            throw new IllegalArgumentException("policy");
+
+        return new TracedExecutionSettings(createSpans, lazySpans, policy, deadlinePolicy, metrics);
+    }
+
+    /**
+     * @param deadlinePolicy how to skip tasks whose Span deadline has passed,
+     *                       or null to run all of them.
+     */
+    public TracedExecutionSettings withDeadlinePolicy(DeadlinePolicy deadlinePolicy) {
+        return new TracedExecutionSettings(createSpans, lazySpans, policy, deadlinePolicy, metrics);
+    }
+
+    /**
+     * @param metrics where the scheduling delay and run time of traced tasks are recorded,
+     *                or null to not record them.
+     */
+    public TracedExecutionSettings withMetrics(ExecutionMetrics metrics) {
+        return new TracedExecutionSettings(createSpans, lazySpans, policy, deadlinePolicy, metrics);
+    }
+}
@@ -0,0 +1,43 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.Executor;
+
+import scala.concurrent.ExecutionContext;
+
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * {@link Executor} propagating the active Span to the executed tasks, the same way
+ * {@link TracedExecutionContext} does (or {@link TracedAutoFinishExecutionContext},
+ * in autoFinish mode), so {@code CompletionStage} chains can be traced too:
+ *
+ * <pre>
+ * Executor executor = new TracedExecutor(Executors.newFixedThreadPool(4), tracer);
+ * CompletableFuture.supplyAsync(this::fetch, executor).thenApplyAsync(this::parse, executor);
+ * </pre>
+ */
+public class TracedExecutor implements Executor {
+    final ExecutionContext tracedContext;
+
+    public TracedExecutor(Executor executor) {
+        this(executor, GlobalTracer.get());
+    }
+
+    public TracedExecutor(Executor executor, Tracer tracer) {
+        this(executor, tracer, false);
+    }
+
+    /**
+     * @param autoFinish whether to keep the active {@link AutoFinishScope} alive until
+     *                   the tasks are done, which requires {@link AutoFinishScopeManager}.
+     */
+    public TracedExecutor(Executor executor, Tracer tracer, boolean autoFinish) {
+        this.tracedContext = TracedExecutors.tracedContext(executor, tracer, autoFinish);
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        tracedContext.prepare().execute(runnable);
+    }
+}
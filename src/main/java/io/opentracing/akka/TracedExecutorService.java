@@ -0,0 +1,67 @@
+package io.opentracing.akka;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import scala.concurrent.ExecutionContext;
+
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * {@link ExecutorService} propagating the active Span to the submitted tasks,
+ * see {@link TracedExecutor}.
+ */
+public class TracedExecutorService extends AbstractExecutorService {
+    final ExecutorService executor;
+    final ExecutionContext tracedContext;
+
+    public TracedExecutorService(ExecutorService executor) {
+        this(executor, GlobalTracer.get());
+    }
+
+    public TracedExecutorService(ExecutorService executor, Tracer tracer) {
+        this(executor, tracer, false);
+    }
+
+    /**
+     * @param autoFinish whether to keep the active {@link AutoFinishScope} alive until
+     *                   the tasks are done, which requires {@link AutoFinishScopeManager}.
+     */
+    public TracedExecutorService(ExecutorService executor, Tracer tracer, boolean autoFinish) {
+        this.tracedContext = TracedExecutors.tracedContext(executor, tracer, autoFinish);
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        tracedContext.prepare().execute(runnable);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,153 @@
+package io.opentracing.akka;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.Cancellable;
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceDelegate;
+import akka.dispatch.ExecutorServiceFactory;
+import akka.dispatch.ForkJoinExecutorConfigurator;
+import akka.dispatch.Mailbox;
+import akka.dispatch.ThreadPoolExecutorConfigurator;
+import com.typesafe.config.Config;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.duration.FiniteDuration;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * {@link ExecutorServiceConfigurator} building a regular fork-join or thread-pool
+ * executor (configured as usual), which propagates the active {@link Span} to the
+ * submitted tasks, like {@link TracedExecutionContext} does, and whose
+ * {@link ExecutorMetrics} are periodically sampled:
+ *
+ * <pre>
+ * my-dispatcher {
+ *   executor = "io.opentracing.akka.TracedExecutorServiceConfigurator"
+ *   traced-executor {
+ *     executor = "fork-join-executor"
+ *     metrics-interval = 1s
+ *   }
+ *   fork-join-executor {
+ *     parallelism-max = 8
+ *   }
+ * }
+ * </pre>
+ *
+ * Tasks go through a {@link TracedExecutionContext} over the executor, configured by
+ * {@link #executionSettings(String)}, which subclasses can override to set a propagation
+ * policy, a deadline policy or execution metrics. Mailbox runs are never traced, as they
+ * process messages from any sender. As executors are created by Akka, {@link GlobalTracer}
+ * is used.
+ */
+public class TracedExecutorServiceConfigurator extends ExecutorServiceConfigurator {
+    final ExecutorServiceConfigurator configurator;
+    final DispatcherPrerequisites prerequisites;
+    final Tracer tracer;
+    final boolean propagate;
+    final long metricsIntervalMillis;
+
+    public TracedExecutorServiceConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+
+        Config tracedConfig = config.getConfig("traced-executor");
+        String executor = tracedConfig.getString("executor");
+        if ("fork-join-executor".equals(executor))
+            configurator = new ForkJoinExecutorConfigurator(config.getConfig(executor), prerequisites);
+        else if ("thread-pool-executor".equals(executor))
+            configurator = new ThreadPoolExecutorConfigurator(config.getConfig(executor), prerequisites);
+        else
+            throw new IllegalArgumentException("Unsupported traced-executor.executor: " + executor);
+
+        this.prerequisites = prerequisites;
+        this.tracer = GlobalTracer.get();
+        this.propagate = tracedConfig.getBoolean("propagate");
+        this.metricsIntervalMillis = tracedConfig.getDuration("metrics-interval", TimeUnit.MILLISECONDS);
+    }
+
+    /* Settings of the TracedExecutionContext of the specified dispatcher, defaults by default. */
+    protected TracedExecutionSettings executionSettings(String id) {
+        return new TracedExecutionSettings();
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        ExecutorServiceFactory factory = configurator.createExecutorServiceFactory(id, threadFactory);
+        TracedExecutionSettings settings = executionSettings(id);
+        return new ExecutorServiceFactory() {
+            @Override
+            public ExecutorService createExecutorService() {
+                return new InstrumentedExecutorService(id, factory.createExecutorService(), settings);
+            }
+        };
+    }
+
+    final class InstrumentedExecutorService implements ExecutorServiceDelegate {
+        final ExecutorService executor;
+        final ExecutionContext tracedContext;
+        final ExecutorMetrics metrics;
+        final Cancellable sampling;
+
+        InstrumentedExecutorService(String id, ExecutorService executor, TracedExecutionSettings settings) {
+            this.executor = executor;
+            this.tracedContext = TracedExecutors.tracedContext(executor, tracer, false, settings);
+
+            if (metricsIntervalMillis > 0) {
+                metrics = ExecutorMetrics.register(prerequisites.settings().name(), id);
+                FiniteDuration interval = FiniteDuration.create(metricsIntervalMillis, TimeUnit.MILLISECONDS);
+                sampling = prerequisites.scheduler().schedule(interval, interval, new Runnable() {
+                    @Override
+                    public void run() {
+                        metrics.sample(executor);
+                    }
+                }, CALLING_THREAD);
+            } else {
+                metrics = null;
+                sampling = null;
+            }
+        }
+
+        @Override
+        public ExecutorService executor() {
+            return executor;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void execute(Runnable runnable) {
+            if (!propagate || runnable instanceof Mailbox)
+                executor.execute(runnable);
+            else
+                tracedContext.prepare().execute(runnable);
+        }
+
+        @Override
+        public void shutdown() {
+            stopSampling();
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            stopSampling();
+            return executor.shutdownNow();
+        }
+
+        void stopSampling() {
+            if (metrics == null)
+                return;
+
+            sampling.cancel();
+            metrics.unregister();
+        }
+    }
+
+    // Sampling is cheap enough to run on the scheduler thread.
+    static final ExecutionContext CALLING_THREAD = ExecutionContext.fromExecutor(Runnable::run);
+}
@@ -0,0 +1,38 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import scala.concurrent.ExecutionContext;
+
+import io.opentracing.Tracer;
+
+/*
+ * Shared by the java.util.concurrent wrappers: tasks go through the prepare()/execute()
+ * cycle of a traced ExecutionContext over the wrapped Executor, whose prepared context
+ * doubles as the submitted task.
+ */
+final class TracedExecutors {
+    private TracedExecutors() {
+    }
+
+    static ExecutionContext tracedContext(Executor executor, Tracer tracer, boolean autoFinish) {
+        return tracedContext(executor, tracer, autoFinish, new TracedExecutionSettings());
+    }
+
+    static ExecutionContext tracedContext(Executor executor, Tracer tracer, boolean autoFinish,
+            TracedExecutionSettings settings) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor");
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+
+        ExecutionContext ec = executor instanceof ExecutorService
+            ? ExecutionContext.fromExecutorService((ExecutorService)executor)
+            : ExecutionContext.fromExecutor(executor);
+
+        return autoFinish
+            ? new TracedAutoFinishExecutionContext(ec, tracer, settings)
+            : new TracedExecutionContext(ec, tracer, settings);
+    }
+}
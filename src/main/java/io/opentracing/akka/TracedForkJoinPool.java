@@ -0,0 +1,67 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import scala.concurrent.ExecutionContext;
+
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * {@link ForkJoinPool} propagating the active Span to the tasks submitted through
+ * {@link #execute(Runnable)} and the {@code submit()} overloads taking a
+ * {@link Runnable} or a {@link Callable}, see {@link TracedExecutor}.
+ * Already built {@link ForkJoinTask}s, and the tasks they fork, are not traced.
+ */
+public class TracedForkJoinPool extends ForkJoinPool {
+    final ExecutionContext tracedContext;
+
+    public TracedForkJoinPool() {
+        this(Runtime.getRuntime().availableProcessors(), GlobalTracer.get(), false);
+    }
+
+    public TracedForkJoinPool(int parallelism, Tracer tracer) {
+        this(parallelism, tracer, false);
+    }
+
+    /**
+     * @param autoFinish whether to keep the active {@link AutoFinishScope} alive until
+     *                   the tasks are done, which requires {@link AutoFinishScopeManager}.
+     */
+    public TracedForkJoinPool(int parallelism, Tracer tracer, boolean autoFinish) {
+        super(parallelism);
+
+        // Prepared contexts are handed to the untraced execute().
+        this.tracedContext = TracedExecutors.tracedContext(super::execute, tracer, autoFinish);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tracedContext.prepare().execute(task);
+    }
+
+    // Adapted tasks are RunnableFutures, completed when run by the prepared context.
+
+    @Override
+    public ForkJoinTask<?> submit(Runnable task) {
+        ForkJoinTask<?> adapted = ForkJoinTask.adapt(task);
+        execute((Runnable)adapted);
+        return adapted;
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+        ForkJoinTask<T> adapted = ForkJoinTask.adapt(task, result);
+        execute((Runnable)adapted);
+        return adapted;
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        ForkJoinTask<T> adapted = ForkJoinTask.adapt(task);
+        execute((Runnable)adapted);
+        return adapted;
+    }
+}
@@ -0,0 +1,182 @@
+package io.opentracing.akka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import akka.dispatch.Futures;
+import akka.dispatch.OnComplete;
+import akka.japi.Function;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.concurrent.Promise;
+
+import io.opentracing.Scope;
+
+/**
+ * Traced counterparts of {@link Futures#future}, {@link Futures#sequence} and {@link Futures#traverse}.
+ *
+ * With a {@link TracedAutoFinishExecutionContext}, Akka's versions capture the active
+ * Span once per input Future, as each of them is chained with its own callback. These
+ * reserve the references for all the callbacks with a single update of the shared
+ * reference count, using {@link AutoFinishScope#capture(int)}, and complete the
+ * result without intermediate Futures. Any other {@link ExecutionContext} is simply
+ * passed on to Akka's versions.
+ *
+ * Unlike Akka's version, {@link #future} fails its Future with a {@link DeadlineExceededException}
+ * when its task is skipped by the {@link DeadlinePolicy} of a traced ExecutionContext, instead of
+ * leaving it uncompleted.
+ */
+public final class TracedFutures {
+    private TracedFutures() {
+    }
+
+    @SuppressWarnings("deprecation")
+    public static <T> Future<T> future(Callable<T> body, ExecutionContext executor) {
+        if (body == null)
+            throw new IllegalArgumentException("body");
+        if (executor == null)
+            throw new IllegalArgumentException("executor");
+
+        Task<T> task = new Task<T>(body);
+        executor.prepare().execute(task);
+        return task.promise.future();
+    }
+
+    static final class Task<T> implements Runnable, DeadlinePolicy.Expirable {
+        final Callable<T> body;
+        final Promise<T> promise = Futures.promise();
+
+        Task(Callable<T> body) {
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            try {
+                promise.success(body.call());
+            } catch (Exception e) {
+                promise.failure(e);
+            }
+        }
+
+        @Override
+        public void expire(DeadlineExceededException exception) {
+            promise.failure(exception);
+        }
+    }
+
+    public static <A> Future<Iterable<A>> sequence(Iterable<Future<A>> in, ExecutionContext executor) {
+        if (in == null)
+            throw new IllegalArgumentException("in");
+        if (executor == null)
+            throw new IllegalArgumentException("executor");
+
+        if (!(executor instanceof TracedAutoFinishExecutionContext))
+            return Futures.sequence(in, executor);
+
+        TracedAutoFinishExecutionContext traced = (TracedAutoFinishExecutionContext)executor;
+        AutoFinishScope scope = traced.activeScope();
+        if (scope == null)
+            return Futures.sequence(in, traced.ec);
+
+        List<Future<A>> futures = toList(in);
+        if (futures.isEmpty())
+            return Futures.successful(Collections.<A>emptyList());
+
+        return new Sequence<A>(scope.capture(futures.size())).start(futures, traced.ec);
+    }
+
+    /**
+     * Applies fn to every element on the calling thread, as Akka does, and sequences
+     * the resulting Futures. Exceptions thrown by fn fail the result.
+     */
+    public static <A, B> Future<Iterable<B>> traverse(Iterable<A> in, Function<A, Future<B>> fn,
+            ExecutionContext executor) {
+        if (in == null)
+            throw new IllegalArgumentException("in");
+        if (fn == null)
+            throw new IllegalArgumentException("fn");
+        if (executor == null)
+            throw new IllegalArgumentException("executor");
+
+        List<Future<B>> futures = in instanceof Collection
+            ? new ArrayList<Future<B>>(((Collection<A>)in).size())
+            : new ArrayList<Future<B>>();
+        for (A element : in) {
+            try {
+                futures.add(fn.apply(element));
+            } catch (Exception e) {
+                futures.add(Futures.<B>failed(e));
+            }
+        }
+
+        return sequence(futures, executor);
+    }
+
+    static <T> List<T> toList(Iterable<T> in) {
+        if (in instanceof List)
+            return (List<T>)in;
+
+        List<T> list = new ArrayList<T>();
+        for (T element : in)
+            list.add(element);
+
+        return list;
+    }
+
+    /*
+     * Shared state of a sequence: every callback activates exactly one of the
+     * reserved references, whether its Future failed or not.
+     */
+    static final class Sequence<A> {
+        final AutoFinishScope.ContinuationGroup group;
+        final Object[] results;
+        final AtomicInteger remaining;
+        final Promise<Iterable<A>> promise = Futures.promise();
+
+        Sequence(AutoFinishScope.ContinuationGroup group) {
+            this.group = group;
+            this.results = new Object[group.count()];
+            this.remaining = new AtomicInteger(group.count());
+        }
+
+        Future<Iterable<A>> start(List<Future<A>> futures, ExecutionContext ec) {
+            for (int i = 0; i < results.length; i++)
+                futures.get(i).onComplete(new Element(i), ec);
+
+            return promise.future();
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(int index, Throwable failure, A success) {
+            try (Scope scope = group.activate()) {
+                if (failure != null) {
+                    promise.tryFailure(failure);
+                    return;
+                }
+
+                results[index] = success;
+                if (remaining.decrementAndGet() == 0)
+                    promise.trySuccess((Iterable<A>)Arrays.asList(results));
+            }
+        }
+
+        final class Element extends OnComplete<A> {
+            final int index;
+
+            Element(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public void onComplete(Throwable failure, A success) {
+                complete(index, failure, success);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.opentracing.akka;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorRefWithCell;
+import akka.actor.ActorSystem;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageDispatcher;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import io.opentracing.Tracer;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * {@link MailboxType} creating {@link TracedMessageQueue}s, so the active Span at
+ * {@code tell()} time is active while the receiving actor processes the message.
+ * It is meant to be set for a whole dispatcher configured with
+ * {@link TracedDispatcherConfigurator}:
+ *
+ * <pre>
+ * traced-dispatcher {
+ *   type = "io.opentracing.akka.TracedDispatcherConfigurator"
+ *   executor = "fork-join-executor"
+ *   mailbox-type = "io.opentracing.akka.TracedMailboxType"
+ * }
+ * </pre>
+ *
+ * Creating the mailbox of an actor running on any other dispatcher fails with an
+ * {@link IllegalStateException}, as the Scopes it activates would never be closed.
+ *
+ * As mailboxes are created by Akka, {@link GlobalTracer} is used.
+ *
+ * Messages sent to an actor that has not been started yet are held by Akka in a temporary
+ * queue and moved to the mailbox later, from another thread, so they are not traced this way.
+ */
+public class TracedMailboxType implements MailboxType, ProducesMessageQueue<TracedMessageQueue> {
+    final Tracer tracer;
+    final PropagationPolicy policy;
+
+    public TracedMailboxType(ActorSystem.Settings settings, Config config) {
+        this(GlobalTracer.get(), PropagationPolicy.SKIP_NOOP);
+    }
+
+    public TracedMailboxType(Tracer tracer, PropagationPolicy policy) {
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+        if (policy == null)
+            throw new IllegalArgumentException("policy");
+
+        this.tracer = tracer;
+        this.policy = policy;
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        if (owner.isDefined() && system.isDefined())
+            checkDispatcher(owner.get(), system.get());
+
+        return new TracedMessageQueue(tracer, policy, system.isDefined() ? system.get() : null);
+    }
+
+    static void checkDispatcher(ActorRef owner, ActorSystem system) {
+        if (!(owner instanceof ActorRefWithCell))
+            return;
+
+        String dispatcherId = ((ActorRefWithCell)owner).underlying().props().dispatcher();
+        MessageDispatcher dispatcher = system.dispatchers().lookup(dispatcherId);
+        if (!(dispatcher.configurator() instanceof TracedDispatcherConfigurator))
+            throw new IllegalStateException("Usage of TracedDispatcherConfigurator required for the dispatcher of "
+                    + owner.path() + ": " + dispatcherId);
+    }
+}
@@ -1,17 +1,50 @@
 package io.opentracing.akka;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import io.opentracing.References;
 import io.opentracing.Scope;
 import io.opentracing.Span;
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
 import io.opentracing.util.GlobalTracer;
 
 public final class TracedMessage<T> {
     private T message;
     private Span activeSpan;
+    private long enqueueTime;
+    private boolean link;
+
+    // Set for messages received from a remote system, see TracedMessageSerializer.
+    private Tracer tracer;
+    private ByteBuffer encodedContext;
+    private SpanContext spanContext;
 
     private TracedMessage(T message, Span activeSpan) {
         this.message = message;
         this.activeSpan = activeSpan;
+        this.enqueueTime = ActorMetrics.enabled ? System.nanoTime() : 0;
+    }
+
+    private TracedMessage(T message, SpanContext linkedContext) {
+        this.message = message;
+        this.spanContext = linkedContext;
+        this.link = true;
+        this.enqueueTime = ActorMetrics.enabled ? System.nanoTime() : 0;
+    }
+
+    private TracedMessage(T message, Tracer tracer, ByteBuffer encodedContext, boolean link) {
+        this.message = message;
+        this.tracer = tracer;
+        this.encodedContext = encodedContext;
+        this.link = link;
+    }
+
+    /* Message whose SpanContext will be extracted from encodedContext upon first request. */
+    static <T> TracedMessage<T> fromBinary(T message, Tracer tracer, ByteBuffer encodedContext, boolean link) {
+        return new TracedMessage<T>(message, tracer, encodedContext, link);
     }
 
     public static Object wrap(Object message) {
@@ -19,19 +52,140 @@ public final class TracedMessage<T> {
     }
 
     public static <T> Object wrap(Span activeSpan, T message) {
+        return wrap(activeSpan, message, PropagationPolicy.SKIP_NOOP);
+    }
+
+    public static <T> Object wrap(Span activeSpan, T message, PropagationPolicy policy) {
+        return wrap(activeSpan, message, policy, null);
+    }
+
+    /**
+     * Wraps the message only if samplingPolicy (when not null) decides to trace its class,
+     * returning the message itself otherwise.
+     */
+    public static <T> Object wrap(Span activeSpan, T message, PropagationPolicy policy,
+            MessageSamplingPolicy samplingPolicy) {
         if (message == null)
             throw new IllegalArgumentException("message cannot be null");
+        if (policy == null)
+            throw new IllegalArgumentException("policy cannot be null");
 
-        if (activeSpan == null)
+        if (activeSpan == null || !policy.shouldPropagate(activeSpan))
+            return message;
+        if (samplingPolicy != null && !samplingPolicy.shouldTrace(message.getClass()))
             return message;
 
         return new TracedMessage<T>(message, activeSpan);
     }
 
+    public static Object link(Object message, int maxChainDepth) {
+        return link(GlobalTracer.get().activeSpan(), message, maxChainDepth);
+    }
+
+    /**
+     * Wraps the message with the {@link SpanContext} of activeSpan only, so the receiving
+     * {@link TracedAbstractActor} starts a new {@link Constants#RECEIVE_OPERATION_NAME} Span
+     * following from it, instead of running under activeSpan. This keeps the traces of long
+     * tell chains (e.g. ping-pong) from growing without bounds.
+     *
+     * The number of links followed so far is kept as the {@link Constants#CHAIN_DEPTH_BAGGAGE_ITEM}
+     * baggage item: once activeSpan has been reached through maxChainDepth links, propagation
+     * stops and the message itself is returned.
+     */
+    public static <T> Object link(Span activeSpan, T message, int maxChainDepth) {
+        if (message == null)
+            throw new IllegalArgumentException("message cannot be null");
+        if (maxChainDepth < 0)
+            throw new IllegalArgumentException("maxChainDepth cannot be negative");
+
+        if (activeSpan == null || !PropagationPolicy.SKIP_NOOP.shouldPropagate(activeSpan))
+            return message;
+        if (chainDepth(activeSpan.getBaggageItem(Constants.CHAIN_DEPTH_BAGGAGE_ITEM)) >= maxChainDepth)
+            return message;
+
+        return new TracedMessage<T>(message, activeSpan.context());
+    }
+
+    /* Returns the number of links followed to reach the specified SpanContext. */
+    static int chainDepth(SpanContext spanContext) {
+        for (Map.Entry<String, String> item : spanContext.baggageItems()) {
+            if (Constants.CHAIN_DEPTH_BAGGAGE_ITEM.equals(item.getKey()))
+                return chainDepth(item.getValue());
+        }
+
+        return 0;
+    }
+
+    static int chainDepth(String value) {
+        if (value == null)
+            return 0;
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Starts the Span receiving this message, which only carries a {@link SpanContext}
+     * (see {@link #activeSpan()}): a child of it, or following from it for links.
+     */
+    Scope startReceive(Tracer tracer, SpanContext spanContext) {
+        Tracer.SpanBuilder builder = tracer.buildSpan(Constants.RECEIVE_OPERATION_NAME);
+        if (!link)
+            return builder.asChildOf(spanContext).startActive(true);
+
+        Scope scope = builder.ignoreActiveSpan()
+            .addReference(References.FOLLOWS_FROM, spanContext)
+            .startActive(true);
+        scope.span().setBaggageItem(Constants.CHAIN_DEPTH_BAGGAGE_ITEM,
+                Integer.toString(chainDepth(spanContext) + 1));
+
+        return scope;
+    }
+
+    /**
+     * Returns whether this message was created by {@link #link(Span, Object, int)}.
+     */
+    public boolean isLink() {
+        return link;
+    }
+
+    /**
+     * Returns the captured {@link Span}, or null if this message was received
+     * from a remote system or is a link, in which case only {@link #spanContext()}
+     * is available.
+     */
     public Span activeSpan() {
         return activeSpan;
     }
 
+    /**
+     * Returns the {@link SpanContext} of the captured {@link Span}, extracting it
+     * lazily if this message was received from a remote system.
+     */
+    public SpanContext spanContext() {
+        if (activeSpan != null)
+            return activeSpan.context();
+
+        if (spanContext == null && encodedContext != null) {
+            spanContext = tracer.extract(Format.Builtin.BINARY, encodedContext.duplicate());
+            encodedContext = null;
+        }
+
+        return spanContext;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at wrapping time, usually right before
+     * being enqueued, or 0 if this message was received from a remote system or
+     * no {@link ActorMetrics} had been created yet.
+     */
+    public long enqueueTime() {
+        return enqueueTime;
+    }
+
     public T message() {
         return message;
     }
@@ -0,0 +1,193 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+
+/**
+ * Unbounded {@link MessageQueue} capturing the active {@link Span} when a message is
+ * enqueued, and activating it when the message is dequeued, right before the actor
+ * processes it. Messages already wrapped with {@link TracedMessage#wrap(Span, Object)}
+ * are unwrapped, and their {@link Span} activated, so any actor (not only
+ * {@link TracedAbstractActor}s) receives the original message.
+ *
+ * The {@link Scope} activated for a message is closed when the next one is dequeued,
+ * or when the mailbox run finishes, which requires the actor to run on a dispatcher
+ * configured with {@link TracedDispatcherConfigurator}.
+ *
+ * The captured {@link Span} is stored in the queue node itself, so no allocation
+ * happens besides the one any linked queue does per message.
+ */
+public class TracedMessageQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+    static final ThreadLocal<ScopeHolder> ACTIVE_SCOPE = new ThreadLocal<ScopeHolder>() {
+        @Override
+        protected ScopeHolder initialValue() {
+            return new ScopeHolder();
+        }
+    };
+
+    static final AtomicReferenceFieldUpdater<TracedMessageQueue, Node> HEAD_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(TracedMessageQueue.class, Node.class, "head");
+    static final AtomicReferenceFieldUpdater<Node, Node> NEXT_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+    final Tracer tracer;
+    final PropagationPolicy policy;
+    final ActorSystem system;
+
+    // Multiple producers/single consumer linked queue: producers swap the head,
+    // and the consumer follows the links from the tail (a consumed stub node).
+    volatile Node head;
+    volatile Node tail;
+
+    static final class Node {
+        Envelope envelope;
+        Span span;
+        volatile Node next;
+
+        Node(Envelope envelope, Span span) {
+            this.envelope = envelope;
+            this.span = span;
+        }
+    }
+
+    static final class ScopeHolder {
+        Scope scope;
+        TracedMessageQueue queue;
+    }
+
+    public TracedMessageQueue(Tracer tracer, PropagationPolicy policy, ActorSystem system) {
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+        if (policy == null)
+            throw new IllegalArgumentException("policy");
+
+        this.tracer = tracer;
+        this.policy = policy;
+        this.system = system;
+
+        Node stub = new Node(null, null);
+        this.head = stub;
+        this.tail = stub;
+    }
+
+    /*
+     * Closes the Scope activated by the last message dequeued from this queue on this thread, if any.
+     */
+    void closeScope() {
+        ScopeHolder holder = ACTIVE_SCOPE.get();
+        if (holder.queue == this)
+            closeActiveScope(holder);
+    }
+
+    static void closeActiveScope(ScopeHolder holder) {
+        Scope scope = holder.scope;
+        if (scope != null) {
+            holder.scope = null;
+            holder.queue = null;
+            scope.close();
+        }
+    }
+
+    @Override
+    public void enqueue(ActorRef receiver, Envelope handle) {
+        Span span = null;
+        if (!(handle.message() instanceof TracedMessage)) {
+            span = tracer.activeSpan();
+            if (span != null && !policy.shouldPropagate(span))
+                span = null;
+        }
+
+        Node node = new Node(handle, span);
+        Node previous = HEAD_UPDATER.getAndSet(this, node);
+        NEXT_UPDATER.lazySet(previous, node);
+    }
+
+    Node poll() {
+        Node next = tail.next;
+        if (next == null)
+            return null;
+
+        tail = next;
+        return next;
+    }
+
+    @Override
+    public Envelope dequeue() {
+        ScopeHolder holder = ACTIVE_SCOPE.get();
+
+        // The previous message on this thread has been processed by now.
+        closeActiveScope(holder);
+
+        Node node = poll();
+        if (node == null)
+            return null;
+
+        Envelope envelope = node.envelope;
+        Span span = node.span;
+        node.envelope = null;
+        node.span = null;
+
+        Object message = envelope.message();
+        if (message instanceof TracedMessage) {
+            TracedMessage<?> tracedMessage = (TracedMessage<?>)message;
+            span = tracedMessage.activeSpan();
+            envelope = Envelope.apply(tracedMessage.message(), envelope.sender(), system);
+
+            if (span == null) {
+                // Received from a remote system, or a link: a Span is created, and finished along the Scope.
+                SpanContext spanContext = tracedMessage.spanContext();
+                if (spanContext != null) {
+                    holder.scope = tracedMessage.startReceive(tracer, spanContext);
+                    holder.queue = this;
+                }
+
+                return envelope;
+            }
+
+            if (!policy.shouldPropagate(span))
+                span = null;
+        }
+
+        if (span != null) {
+            holder.scope = tracer.scopeManager().activate(span, false);
+            holder.queue = this;
+        }
+
+        return envelope;
+    }
+
+    @Override
+    public int numberOfMessages() {
+        int count = 0;
+        for (Node node = tail.next; node != null && count < Integer.MAX_VALUE; node = node.next)
+            count++;
+
+        return count;
+    }
+
+    @Override
+    public boolean hasMessages() {
+        return tail.next != null;
+    }
+
+    @Override
+    public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+        Node node;
+        while ((node = poll()) != null) {
+            Envelope envelope = node.envelope;
+            node.envelope = null;
+            node.span = null;
+            deadLetters.enqueue(owner, envelope);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.opentracing.akka;
+
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.ByteBufferSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Akka {@link Serializer} for {@link TracedMessage}, so Spans can be propagated
+ * across remoting and cluster. The {@link SpanContext} is injected using
+ * {@link Format.Builtin#BINARY} into a small header, and the original message
+ * is serialized after it using its own serializer:
+ *
+ * <pre>
+ * byte   version
+ * byte   flags (since version 2): 0x1 for links
+ * int    payload serializer id
+ * short  payload manifest length, followed by the UTF-8 manifest
+ * short  context length, followed by the injected SpanContext
+ * ...    payload
+ * </pre>
+ *
+ * On the receiving side, the original message is wrapped in a {@link TracedMessage}
+ * whose {@link SpanContext} is extracted only when requested. When both this and the
+ * payload serializer are used as {@link ByteBufferSerializer}s (Artery), the payload
+ * is written to and read from the transport buffer without any intermediate copy.
+ *
+ * It is registered for {@link TracedMessage} in the reference.conf of this library,
+ * and {@link GlobalTracer} is used.
+ */
+public class TracedMessageSerializer extends SerializerWithStringManifest implements ByteBufferSerializer {
+    public static final int IDENTIFIER = 0x6f74616b;
+
+    static final byte VERSION = 2;
+    static final byte FLAG_LINK = 0x1;
+    static final int MAX_CONTEXT_SIZE = 512;
+
+    static final ThreadLocal<ByteBuffer> CONTEXT_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(MAX_CONTEXT_SIZE);
+        }
+    };
+
+    final ExtendedActorSystem system;
+    final Tracer tracer;
+    volatile Serialization serialization;
+
+    public TracedMessageSerializer(ExtendedActorSystem system) {
+        this(system, GlobalTracer.get());
+    }
+
+    public TracedMessageSerializer(ExtendedActorSystem system, Tracer tracer) {
+        if (system == null)
+            throw new IllegalArgumentException("system");
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+
+        this.system = system;
+        this.tracer = tracer;
+    }
+
+    // Serializers are created while the extension itself is being initialized.
+    Serialization serialization() {
+        Serialization serialization = this.serialization;
+        if (serialization == null)
+            this.serialization = serialization = (Serialization)SerializationExtension.apply(system);
+
+        return serialization;
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        return "";
+    }
+
+    static String payloadManifest(Serializer serializer, Object message) {
+        if (serializer instanceof SerializerWithStringManifest)
+            return ((SerializerWithStringManifest)serializer).manifest(message);
+
+        return serializer.includeManifest() ? message.getClass().getName() : "";
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        TracedMessage<?> tracedMessage = (TracedMessage<?>)o;
+        Object message = tracedMessage.message();
+        Serializer serializer = serialization().findSerializerFor(message);
+        byte[] manifest = payloadManifest(serializer, message).getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer context = CONTEXT_BUFFER.get();
+        ((Buffer)context).clear();
+        injectContext(tracedMessage, context);
+        ((Buffer)context).flip();
+
+        byte[] payload = serializer.toBinary(message);
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize(manifest.length, context.remaining()) + payload.length);
+        writeHeader(buffer, tracedMessage, serializer.identifier(), manifest);
+        buffer.putShort((short)context.remaining());
+        buffer.put(context);
+        buffer.put(payload);
+
+        return buffer.array();
+    }
+
+    @Override
+    public void toBinary(Object o, ByteBuffer buffer) {
+        TracedMessage<?> tracedMessage = (TracedMessage<?>)o;
+        Object message = tracedMessage.message();
+        Serializer serializer = serialization().findSerializerFor(message);
+        byte[] manifest = payloadManifest(serializer, message).getBytes(StandardCharsets.UTF_8);
+
+        writeHeader(buffer, tracedMessage, serializer.identifier(), manifest);
+
+        // Inject right into the buffer, filling in the length afterwards.
+        int lengthPosition = buffer.position();
+        ((Buffer)buffer).position(lengthPosition + 2);
+        ByteBuffer context = buffer.slice();
+        if (context.remaining() > MAX_CONTEXT_SIZE)
+            ((Buffer)context).limit(MAX_CONTEXT_SIZE);
+
+        injectContext(tracedMessage, context);
+        buffer.putShort(lengthPosition, (short)context.position());
+        ((Buffer)buffer).position(lengthPosition + 2 + context.position());
+
+        if (serializer instanceof ByteBufferSerializer)
+            ((ByteBufferSerializer)serializer).toBinary(message, buffer);
+        else
+            buffer.put(serializer.toBinary(message));
+    }
+
+    static int headerSize(int manifestLength, int contextLength) {
+        return 1 + 1 + 4 + 2 + manifestLength + 2 + contextLength;
+    }
+
+    static void writeHeader(ByteBuffer buffer, TracedMessage<?> tracedMessage, int serializerId, byte[] manifest) {
+        buffer.put(VERSION);
+        buffer.put(tracedMessage.isLink() ? FLAG_LINK : 0);
+        buffer.putInt(serializerId);
+        buffer.putShort((short)manifest.length);
+        buffer.put(manifest);
+    }
+
+    /* Leaves the context empty if the tracer needs more than MAX_CONTEXT_SIZE bytes. */
+    void injectContext(TracedMessage<?> tracedMessage, ByteBuffer context) {
+        SpanContext spanContext = tracedMessage.spanContext();
+        if (spanContext == null)
+            return;
+
+        try {
+            tracer.inject(spanContext, Format.Builtin.BINARY, context);
+        } catch (BufferOverflowException e) {
+            ((Buffer)context).clear();
+        }
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) {
+        // Both the context and the payload are views over the received bytes.
+        return fromBinary(ByteBuffer.wrap(bytes), false);
+    }
+
+    @Override
+    public Object fromBinary(ByteBuffer buffer, String manifest) {
+        // The transport reuses its buffer, so the (small) context is copied.
+        return fromBinary(buffer, true);
+    }
+
+    Object fromBinary(ByteBuffer buffer, boolean copyContext) {
+        byte version = buffer.get();
+        if (version != 1 && version != VERSION)
+            throw new IllegalArgumentException("Unsupported TracedMessage version: " + version);
+
+        // Version 1 headers, from older nodes, have no flags.
+        byte flags = version == 1 ? 0 : buffer.get();
+
+        int serializerId = buffer.getInt();
+        byte[] manifest = new byte[buffer.getShort()];
+        buffer.get(manifest);
+
+        int contextLength = buffer.getShort();
+        ByteBuffer context = null;
+        if (contextLength > 0) {
+            context = buffer.slice();
+            ((Buffer)context).limit(contextLength);
+            if (copyContext) {
+                ByteBuffer copy = ByteBuffer.allocate(contextLength).put(context);
+                ((Buffer)copy).flip();
+                context = copy;
+            }
+
+            ((Buffer)buffer).position(buffer.position() + contextLength);
+        }
+
+        Object message = serialization().deserializeByteBuffer(buffer.slice(), serializerId,
+                new String(manifest, StandardCharsets.UTF_8));
+
+        if (context == null)
+            return message;
+
+        return TracedMessage.fromBinary(message, tracer, context, (flags & FLAG_LINK) != 0);
+    }
+}
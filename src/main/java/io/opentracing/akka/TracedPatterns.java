@@ -0,0 +1,175 @@
+package io.opentracing.akka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import akka.actor.ActorRef;
+import akka.dispatch.OnComplete;
+import akka.japi.Function;
+import akka.pattern.AskTimeoutException;
+import akka.pattern.ExplicitlyAskableActorRef$;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.runtime.AbstractFunction1;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracer;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Traced counterparts of {@link Patterns#ask}: an {@link Constants#ASK_OPERATION_NAME} client Span,
+ * child of the active one (if any), is propagated with the message as a {@link TracedMessage}, and
+ * finished once the reply arrives or the ask fails (tagged with {@link Constants#ASK_TIMED_OUT}
+ * upon timeout).
+ *
+ * A {@link Constants#ASK_SENT_EVENT} is logged once the temporary actor has been created, the
+ * message sent and the timeout scheduled, telling this overhead apart from the actor latency.
+ * The Span is finished by a callback running right where the Future is completed, and the
+ * original Future is returned, so no extra Future or thread hop is involved.
+ */
+public final class TracedPatterns {
+    static final ExecutionContext CALLING_THREAD = ExecutionContext.fromExecutor(Runnable::run);
+
+    private TracedPatterns() {
+    }
+
+    public static Future<Object> ask(ActorRef actor, Object message, Timeout timeout) {
+        return ask(actor, message, timeout, GlobalTracer.get());
+    }
+
+    public static Future<Object> ask(ActorRef actor, Object message, Timeout timeout, Tracer tracer) {
+        if (actor == null)
+            throw new IllegalArgumentException("actor");
+        if (message == null)
+            throw new IllegalArgumentException("message");
+        if (timeout == null)
+            throw new IllegalArgumentException("timeout");
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+
+        if (tracer instanceof NoopTracer)
+            return Patterns.ask(actor, message, timeout);
+
+        Span span = startSpan(actor, tracer);
+        Future<Object> future;
+        try {
+            future = Patterns.ask(actor, TracedMessage.wrap(span, message, PropagationPolicy.ALWAYS), timeout);
+        } catch (RuntimeException e) {
+            finish(span, e);
+            throw e;
+        }
+
+        return sent(span, future);
+    }
+
+    public static Future<Object> askWithReplyTo(ActorRef actor, Function<ActorRef, Object> messageFactory,
+            Timeout timeout) {
+        return askWithReplyTo(actor, messageFactory, timeout, GlobalTracer.get());
+    }
+
+    /**
+     * Like {@link #ask(ActorRef, Object, Timeout, Tracer)}, with the message built by
+     * messageFactory from the temporary actor to reply to.
+     */
+    public static Future<Object> askWithReplyTo(ActorRef actor, Function<ActorRef, Object> messageFactory,
+            Timeout timeout, Tracer tracer) {
+        if (actor == null)
+            throw new IllegalArgumentException("actor");
+        if (messageFactory == null)
+            throw new IllegalArgumentException("messageFactory");
+        if (timeout == null)
+            throw new IllegalArgumentException("timeout");
+        if (tracer == null)
+            throw new IllegalArgumentException("tracer");
+
+        if (tracer instanceof NoopTracer)
+            return askWithReplyTo(actor, new ReplyToFactory(messageFactory, null), timeout);
+
+        Span span = startSpan(actor, tracer);
+        Future<Object> future;
+        try {
+            future = askWithReplyTo(actor, new ReplyToFactory(messageFactory, span), timeout);
+        } catch (RuntimeException e) {
+            finish(span, e);
+            throw e;
+        }
+
+        return sent(span, future);
+    }
+
+    // Patterns.ask(ActorRef, Function, Timeout) sends the factory itself as the message in Akka 2.5.3.
+    static Future<Object> askWithReplyTo(ActorRef actor, ReplyToFactory messageFactory, Timeout timeout) {
+        return ExplicitlyAskableActorRef$.MODULE$.ask$extension(actor, messageFactory, timeout, ActorRef.noSender());
+    }
+
+    /* Builds the message for the temporary actor, wrapping it with the Span, if any. */
+    static final class ReplyToFactory extends AbstractFunction1<ActorRef, Object> {
+        final Function<ActorRef, Object> messageFactory;
+        final Span span;
+
+        ReplyToFactory(Function<ActorRef, Object> messageFactory, Span span) {
+            this.messageFactory = messageFactory;
+            this.span = span;
+        }
+
+        @Override
+        public Object apply(ActorRef replyTo) {
+            Object message;
+            try {
+                message = messageFactory.apply(replyTo);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            return span == null ? message : TracedMessage.wrap(span, message, PropagationPolicy.ALWAYS);
+        }
+    }
+
+    static Span startSpan(ActorRef actor, Tracer tracer) {
+        return tracer.buildSpan(Constants.ASK_OPERATION_NAME)
+            .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+            .withTag(Tags.COMPONENT.getKey(), Constants.COMPONENT_NAME)
+            .withTag(Constants.ACTOR_PATH, actor.path().toString())
+            .startManual();
+    }
+
+    static Future<Object> sent(Span span, Future<Object> future) {
+        span.log(Constants.ASK_SENT_EVENT);
+        future.onComplete(new Completion(span), CALLING_THREAD);
+        return future;
+    }
+
+    static void finish(Span span, Throwable failure) {
+        if (failure != null) {
+            if (failure instanceof AskTimeoutException)
+                span.setTag(Constants.ASK_TIMED_OUT, true);
+
+            Tags.ERROR.set(span, true);
+            Map<String, Object> fields = new HashMap<String, Object>();
+            fields.put("event", Tags.ERROR.getKey());
+            fields.put("error.object", failure);
+            span.log(fields);
+        }
+
+        span.finish();
+    }
+
+    static final class Completion extends OnComplete<Object> {
+        final Span span;
+
+        Completion(Span span) {
+            this.span = span;
+        }
+
+        @Override
+        public void onComplete(Throwable failure, Object reply) {
+            finish(span, failure);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.opentracing.akka;
+
+import java.util.ArrayDeque;
+
+import akka.dispatch.Batchable;
+import scala.Function0;
+import scala.concurrent.BlockContext;
+import scala.concurrent.CanAwait;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.OnCompleteRunnable;
+import scala.runtime.AbstractFunction0;
+
+/*
+ * Per-thread batch of traced tasks sharing a single Scope activation.
+ *
+ * When the wrapped ExecutionContext is a BatchingExecutor (Akka dispatchers), a
+ * callback completing a Future usually submits the next chained callback right
+ * away, capturing the very same Span. Instead of handing it to the dispatcher
+ * (which would run it after our Scope has been closed, just to activate it again),
+ * it is queued here and run inline before the running task deactivates its Scope.
+ *
+ * Like the Akka/Scala BatchingExecutors, only Batchable tasks are queued, and pending
+ * tasks are resubmitted to their ExecutionContext if a task (including the one owning
+ * the batch) blocks through scala.concurrent.blocking, or fails.
+ */
+final class TracedTaskBatch implements BlockContext {
+    static final ThreadLocal<TracedTaskBatch> LOCAL = new ThreadLocal<TracedTaskBatch>() {
+        @Override
+        protected TracedTaskBatch initialValue() {
+            return new TracedTaskBatch();
+        }
+    };
+
+    interface Task extends Runnable, Batchable {
+        /* Runs the task owning the batch, under the context it activated itself. */
+        void runOwner();
+
+        /* Runs a queued task, assuming its context has already been activated. */
+        void runInline();
+
+        /* Submits the task to its ExecutionContext, to be run on its own. */
+        void resubmit();
+    }
+
+    final ArrayDeque<Task> pending = new ArrayDeque<Task>();
+    final Function0<Void> runTasks = new AbstractFunction0<Void>() {
+        @Override
+        public Void apply() {
+            runTasks();
+            return null;
+        }
+    };
+
+    Object owner;
+    Object key;
+    Task running;
+    BlockContext parent;
+
+    private TracedTaskBatch() {
+    }
+
+    static TracedTaskBatch current() {
+        return LOCAL.get();
+    }
+
+    static boolean isBatching(ExecutionContext ec) {
+        return ec instanceof akka.dispatch.BatchingExecutor || ec instanceof scala.concurrent.BatchingExecutor;
+    }
+
+    static boolean isBatchable(Runnable runnable) {
+        if (runnable instanceof Batchable)
+            return ((Batchable)runnable).isBatchable();
+
+        return runnable instanceof OnCompleteRunnable;
+    }
+
+    /*
+     * Starts a batch for the specified owner/key pair, returning false if another
+     * batch is already running on this thread (in which case end() must not be called).
+     */
+    boolean begin(Object owner, Object key) {
+        if (this.key != null)
+            return false;
+
+        this.owner = owner;
+        this.key = key;
+        return true;
+    }
+
+    /* Queues the task if it is batchable and shares the owner/key pair of the running batch. */
+    boolean offer(Object owner, Object key, Task task) {
+        if (this.key == null || this.key != key || this.owner != owner || !task.isBatchable())
+            return false;
+
+        pending.add(task);
+        return true;
+    }
+
+    /*
+     * Runs the owner task and then the queued ones, with this batch as the BlockContext,
+     * so blocking (e.g. on a Future completed by a queued task) hands them back first.
+     */
+    void run(Task owner) {
+        running = owner;
+        parent = BlockContext.current();
+        try {
+            BlockContext.withBlockContext(this, runTasks);
+        } finally {
+            parent = null;
+            running = null;
+        }
+    }
+
+    void runTasks() {
+        running.runOwner();
+
+        Task task;
+        while ((task = pending.poll()) != null)
+            task.runInline();
+    }
+
+    void end(Object key) {
+        // The batch may have been ended already, if a task blocked.
+        if (this.key != key)
+            return;
+
+        this.owner = null;
+        this.key = null;
+        resubmitPending();
+    }
+
+    void resubmitPending() {
+        Task task;
+        while ((task = pending.poll()) != null)
+            task.resubmit();
+    }
+
+    @Override
+    public <T> T blockOn(Function0<T> thunk, CanAwait permission) {
+        // Do not hold the pending tasks hostage while blocking.
+        BlockContext blockContext = parent;
+        end(key);
+        return blockContext.blockOn(thunk, permission);
+    }
+}
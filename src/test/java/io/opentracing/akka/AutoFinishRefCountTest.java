@@ -0,0 +1,138 @@
+package io.opentracing.akka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Stress tests in the jcstress fashion: many short rounds, with all the actors
+ * released at once, checking the invariants after each round.
+ */
+public class AutoFinishRefCountTest {
+    static final int ROUNDS = 200;
+    static final int THREADS = 4;
+    static final int OPERATIONS = 2000;
+
+    @Test
+    public void testAtomic() throws Exception {
+        assertSequential(() -> new AutoFinishRefCount.Atomic());
+        stress(() -> new AutoFinishRefCount.Atomic());
+    }
+
+    @Test
+    public void testStriped() throws Exception {
+        // Created explicitly, as create() falls back to Atomic on a single processor.
+        assertSequential(() -> new AutoFinishRefCount.Striped());
+        stress(() -> new AutoFinishRefCount.Striped());
+    }
+
+    @Test
+    public void testStripedOwnerReleasedLast() {
+        AutoFinishRefCount refCount = new AutoFinishRefCount.Striped();
+        refCount.retain();
+        assertFalse(refCount.release());
+        assertTrue(refCount.releaseOwner());
+    }
+
+    @Test
+    public void testBulk() {
+        for (AutoFinishRefCount refCount : new AutoFinishRefCount[] {
+                new AutoFinishRefCount.Atomic(), new AutoFinishRefCount.Striped() }) {
+            refCount.retain(3);
+            assertFalse(refCount.release(2));
+            assertFalse(refCount.releaseOwner());
+            assertTrue(refCount.release(1));
+        }
+    }
+
+    @Test
+    public void testStripedReconciliation() {
+        AutoFinishRefCount.Striped refCount = new AutoFinishRefCount.Striped();
+
+        // References taken and dropped through the stripes, as upon contention.
+        assertTrue(refCount.addToStripe(1));
+        assertTrue(refCount.addToStripe(1));
+        assertTrue(refCount.addToStripe(-1));
+        assertFalse(refCount.releaseOwner());
+
+        // Stripes are retired from now on.
+        assertFalse(refCount.addToStripe(1));
+        assertTrue(refCount.release());
+    }
+
+    void assertSequential(Supplier<AutoFinishRefCount> factory) {
+        AutoFinishRefCount refCount = factory.get();
+        refCount.retain();
+        refCount.retain();
+        assertFalse(refCount.releaseOwner());
+        assertFalse(refCount.release());
+        assertTrue(refCount.release());
+    }
+
+    void stress(Supplier<AutoFinishRefCount> factory) throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            AutoFinishRefCount refCount = factory.get();
+            AtomicInteger outstanding = new AtomicInteger(1 + THREADS);
+            AtomicInteger finished = new AtomicInteger();
+            AtomicInteger premature = new AtomicInteger();
+            CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+            List<Thread> threads = new ArrayList<Thread>();
+
+            // Each worker inherits a reference, as a captured continuation would.
+            for (int i = 0; i < THREADS; i++) {
+                refCount.retain();
+                threads.add(new Thread(() -> {
+                    await(barrier);
+                    for (int j = 0; j < OPERATIONS; j++) {
+                        outstanding.incrementAndGet();
+                        refCount.retain();
+                        release(() -> refCount.release(), outstanding, finished, premature);
+                    }
+
+                    release(() -> refCount.release(), outstanding, finished, premature);
+                }));
+            }
+
+            for (Thread thread : threads)
+                thread.start();
+
+            // The owner goes away while the workers are running.
+            await(barrier);
+            release(() -> refCount.releaseOwner(), outstanding, finished, premature);
+
+            for (Thread thread : threads)
+                thread.join();
+
+            assertEquals("Round " + round, 0, premature.get());
+            assertEquals("Round " + round, 1, finished.get());
+        }
+    }
+
+    /* Holders stop being outstanding before releasing, so nothing is outstanding upon the last release. */
+    static void release(BooleanSupplier release, AtomicInteger outstanding, AtomicInteger finished,
+            AtomicInteger premature) {
+        outstanding.decrementAndGet();
+        if (release.getAsBoolean()) {
+            finished.incrementAndGet();
+            if (outstanding.get() != 0)
+                premature.incrementAndGet();
+        }
+    }
+
+    static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
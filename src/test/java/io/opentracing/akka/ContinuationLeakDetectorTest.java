@@ -0,0 +1,115 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Scope;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import org.junit.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+public class ContinuationLeakDetectorTest {
+    // In its own frame, so no dead local keeps the Scope reachable.
+    static void leak(MockTracer tracer, int groupSize) {
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            ((AutoFinishScope)scope).capture();
+            if (groupSize > 0)
+                ((AutoFinishScope)scope).capture(groupSize);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalSampleRate() throws Exception {
+        new ContinuationLeakDetector(2, ContinuationLeakDetector.Action.REPORT);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalAction() throws Exception {
+        new ContinuationLeakDetector(1, null);
+    }
+
+    @Test
+    public void testLeak() throws Exception {
+        ContinuationLeakDetector detector = new ContinuationLeakDetector(1, ContinuationLeakDetector.Action.FINISH);
+        MockTracer tracer = new MockTracer(new AutoFinishScopeManager(AutoFinishScopeManager.RefCounting.ATOMIC,
+                detector));
+
+        leak(tracer, 2);
+
+        assertEquals(0, tracer.finishedSpans().size());
+        assertEquals(1, detector.trackedSpans());
+        assertEquals(3, detector.outstandingContinuations());
+
+        // The Span itself is kept by the detector until processed.
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            System.gc();
+            return detector.leakedSpans() == 1;
+        });
+
+        assertEquals(3, detector.leakedContinuations());
+        assertEquals(0, detector.outstandingContinuations());
+        assertEquals(0, detector.trackedSpans());
+        assertEquals(1, tracer.finishedSpans().size());
+
+        MockSpan span = tracer.finishedSpans().get(0);
+        assertEquals(3, span.tags().get(Constants.LEAKED_CONTINUATIONS));
+    }
+
+    @Test
+    public void testNoLeak() throws Exception {
+        ContinuationLeakDetector detector = new ContinuationLeakDetector(1, ContinuationLeakDetector.Action.FINISH);
+        MockTracer tracer = new MockTracer(new StackAutoFinishScopeManager(
+                AutoFinishScopeManager.RefCounting.STRIPED, detector));
+        AutoFinishScope.Continuation continuation;
+        AutoFinishScope.ContinuationGroup group;
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            continuation = ((AutoFinishScope)scope).capture();
+            group = ((AutoFinishScope)scope).capture(2);
+        }
+
+        assertEquals(3, detector.outstandingContinuations());
+        continuation.activate().close();
+        group.activate().close();
+        group.release(1);
+
+        assertEquals(1, tracer.finishedSpans().size());
+        assertEquals(0, detector.trackedSpans());
+        assertEquals(0, detector.outstandingContinuations());
+
+        System.gc();
+        assertEquals(0, detector.leakedSpans());
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        ContinuationLeakDetector detector = new ContinuationLeakDetector(1, ContinuationLeakDetector.Action.REPORT);
+        MockTracer tracer = new MockTracer(new AutoFinishScopeManager(AutoFinishScopeManager.RefCounting.ATOMIC,
+                detector));
+
+        leak(tracer, 0);
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            System.gc();
+            return detector.leakedSpans() == 1;
+        });
+
+        assertEquals(0, tracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        ContinuationLeakDetector detector = new ContinuationLeakDetector(0, ContinuationLeakDetector.Action.FINISH);
+        MockTracer tracer = new MockTracer(new AutoFinishScopeManager(AutoFinishScopeManager.RefCounting.ATOMIC,
+                detector));
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            ((AutoFinishScope)scope).capture();
+        }
+
+        assertEquals(0, detector.trackedSpans());
+        assertEquals(0, detector.outstandingContinuations());
+    }
+}
@@ -0,0 +1,97 @@
+package io.opentracing.akka;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ElementSpanBatcherTest {
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalTracer() throws Exception {
+        new ElementSpanBatcher(null, "stage", 10);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalBatch() throws Exception {
+        new ElementSpanBatcher(mockTracer, "stage", 0, 0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testMaxElements() throws Exception {
+        ElementSpanBatcher batcher = new ElementSpanBatcher(mockTracer, "stage", 3);
+
+        for (int i = 0; i < 7; i++) {
+            try (Scope scope = batcher.activate(i)) {
+                assertSame(batcher.span(), mockTracer.activeSpan());
+            }
+        }
+
+        assertEquals(2, mockTracer.finishedSpans().size());
+        batcher.finish();
+        assertNull(batcher.span());
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(3, spans.size());
+        assertEquals(3, spans.get(0).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals(3, spans.get(1).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals(1, spans.get(2).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals("stage", spans.get(0).operationName());
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        ElementSpanBatcher batcher = new ElementSpanBatcher(mockTracer, "stage", 0, 20, TimeUnit.MILLISECONDS,
+                nanos::get);
+
+        batcher.activate("one").close();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(19));
+        batcher.activate("two").close();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        batcher.activate("three").close();
+        batcher.finish();
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(2, spans.size());
+        assertEquals(2, spans.get(0).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals(1, spans.get(1).tags().get(Constants.STREAM_ELEMENTS));
+    }
+
+    @Test
+    public void testTracedElements() throws Exception {
+        ElementSpanBatcher batcher = new ElementSpanBatcher(mockTracer, "stage", 10);
+        Span one = mockTracer.buildSpan("one").startManual();
+        Span two = mockTracer.buildSpan("two").startManual();
+
+        batcher.activate(TracedMessage.wrap(one, "a")).close();
+        batcher.activate(TracedMessage.wrap(one, "b")).close();
+        batcher.activate(TracedMessage.wrap(two, "c")).close();
+        batcher.finish();
+
+        // A new batch per parent.
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(2, spans.size());
+        assertEquals(((MockSpan)one).context().spanId(), spans.get(0).parentId());
+        assertEquals(2, spans.get(0).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals(((MockSpan)two).context().spanId(), spans.get(1).parentId());
+        assertEquals(1, spans.get(1).tags().get(Constants.STREAM_ELEMENTS));
+    }
+}
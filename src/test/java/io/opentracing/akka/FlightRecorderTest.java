@@ -0,0 +1,163 @@
+package io.opentracing.akka;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.opentracing.Scope;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.concurrent.ExecutionContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderTest {
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        GlobalSpanIds.register(SpanIds.of(ctx -> ((MockSpan.MockContext)ctx).traceId(),
+                ctx -> ((MockSpan.MockContext)ctx).spanId()));
+    }
+
+    @After
+    public void after() throws Exception {
+        GlobalSpanIds.register(SpanIds.NONE);
+    }
+
+    static FlightRecorder newRecorder(int capacity) {
+        return new FlightRecorder(capacity);
+    }
+
+    @Test
+    public void testExecutions() throws Exception {
+        FlightRecorder recorder = newRecorder(16);
+        ExecutionMetrics metrics = new ExecutionMetrics(0, TimeUnit.NANOSECONDS, recorder);
+        ExecutionContext ec = new TracedExecutionContext(ExecutionContext.fromExecutor(Runnable::run),
+                mockTracer, new TracedExecutionSettings().withMetrics(metrics));
+
+        MockSpan span;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            span = (MockSpan)scope.span();
+            ec.prepare().execute(() -> {});
+            ec.prepare().execute(() -> {});
+        }
+
+        Path file = folder.newFile().toPath();
+        recorder.dump(file.toString());
+
+        List<FlightRecorder.Record> records = FlightRecorder.read(file);
+        assertEquals(2, records.size());
+        for (FlightRecorder.Record record : records) {
+            assertEquals(FlightRecorder.EXECUTE, record.kind());
+            assertEquals(span.context().traceId(), record.traceId());
+            assertEquals(span.context().spanId(), record.spanId());
+            assertEquals(Thread.currentThread().getId(), record.threadId());
+            assertEquals(Constants.EXECUTE_OPERATION_NAME, record.name());
+            assertEquals("", record.actorPath());
+            assertTrue(record.queueTime() >= 0);
+            assertTrue(record.endTime() >= record.startTime());
+        }
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        FlightRecorder recorder = newRecorder(4);
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        for (int i = 0; i < 10; i++)
+            recorder.recordReceive(span, recorder.nameId("akka://testSystem/user/actorOne"), "foo", -1, i, i + 1);
+
+        assertEquals(10, recorder.getRecordedSpans());
+
+        Path file = folder.newFile().toPath();
+        recorder.dump(file);
+
+        // Only the most recent ones are kept, oldest first.
+        List<FlightRecorder.Record> records = FlightRecorder.read(file);
+        assertEquals(4, records.size());
+        for (int i = 0; i < 4; i++) {
+            FlightRecorder.Record record = records.get(i);
+            assertEquals(FlightRecorder.RECEIVE, record.kind());
+            assertEquals("akka://testSystem/user/actorOne", record.actorPath());
+            assertEquals(String.class.getName(), record.name());
+            assertEquals(-1, record.queueTime());
+            assertEquals(6 + i, record.startTime());
+        }
+    }
+
+    @Test
+    public void testConcurrentDump() throws Exception {
+        FlightRecorder recorder = newRecorder(64);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            long base = (i + 1) * 1000000000L;
+            Thread writer = new Thread(() -> {
+                for (long n = base; !done.get(); n++)
+                    recorder.record(FlightRecorder.EXECUTE, null, 0, 0, n, n, n);
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        int dumped = 0;
+        try {
+            for (int i = 0; i < 50; i++) {
+                Path file = folder.newFile().toPath();
+                recorder.dump(file);
+
+                // Torn records would mix the values of different writes.
+                for (FlightRecorder.Record record : FlightRecorder.read(file)) {
+                    assertEquals(record.startTime(), record.queueTime());
+                    assertEquals(record.startTime(), record.endTime());
+                    dumped++;
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread writer : writers)
+                writer.join();
+        }
+
+        assertTrue(dumped > 0);
+    }
+
+    @Test
+    public void testNoSpanIds() throws Exception {
+        GlobalSpanIds.register(SpanIds.NONE);
+        FlightRecorder recorder = newRecorder(4);
+        recorder.recordExecution(mockTracer.buildSpan("one").startManual(), 0, 1, 2);
+
+        Path file = folder.newFile().toPath();
+        recorder.dump(file);
+
+        FlightRecorder.Record record = FlightRecorder.read(file).get(0);
+        assertEquals(0, record.traceId());
+        assertEquals(0, record.spanId());
+    }
+
+    @Test
+    public void testEmptyDump() throws Exception {
+        Path file = folder.newFile().toPath();
+        new FlightRecorder(8).dump(file);
+        assertEquals(0, FlightRecorder.read(file).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new FlightRecorder(0);
+    }
+}
@@ -0,0 +1,157 @@
+package io.opentracing.akka;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.util.Timeout;
+import io.opentracing.Scope;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+
+import static akka.pattern.Patterns.ask;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class JfrEventsTest {
+    final MockTracer mockTracer = new MockTracer(new AutoFinishScopeManager());
+    ActorSystem system;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void before() throws Exception {
+        assumeTrue(JfrEvents.isAvailable());
+        mockTracer.reset();
+        GlobalSpanIds.register(SpanIds.of(ctx -> ((MockSpan.MockContext)ctx).traceId(),
+                ctx -> ((MockSpan.MockContext)ctx).spanId()));
+        system = ActorSystem.create("testSystem");
+    }
+
+    @After
+    public void after() throws Exception {
+        GlobalSpanIds.register(SpanIds.NONE);
+        if (system != null)
+            system.terminate();
+    }
+
+    static class EchoActor extends TracedAbstractActor {
+        public EchoActor(MockTracer tracer) {
+            super(tracer);
+        }
+
+        public static Props props(MockTracer tracer) {
+            return Props.create(EchoActor.class, () -> new EchoActor(tracer));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    List<RecordedEvent> record(String eventName, Runnable runnable) throws Exception {
+        Path file = folder.newFile().toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(eventName).withThreshold(Duration.ZERO);
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().equals(eventName))
+                events.add(event);
+        }
+
+        return events;
+    }
+
+    @Test
+    public void testDisabled() {
+        assertNull(JfrEvents.beginExecute());
+        assertNull(JfrEvents.beginReceive());
+        assertNull(JfrEvents.beginSpanFinish());
+    }
+
+    @Test
+    public void testExecuteAndFinish() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.fromExecutor(Runnable::run),
+                mockTracer);
+        MockSpan[] span = new MockSpan[1];
+
+        List<RecordedEvent> events = record("io.opentracing.akka.Execute", () -> {
+            try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+                span[0] = (MockSpan)scope.span();
+                ec.prepare().execute(() -> {});
+            }
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(span[0].context().traceId(), events.get(0).getLong("traceId"));
+        assertEquals(span[0].context().spanId(), events.get(0).getLong("spanId"));
+
+        events = record("io.opentracing.akka.SpanFinish", () -> {
+            try (Scope scope = mockTracer.buildSpan("two").startActive(true)) {
+                span[0] = (MockSpan)scope.span();
+            }
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(span[0].context().spanId(), events.get(0).getLong("spanId"));
+    }
+
+    @Test
+    public void testReceive() throws Exception {
+        ActorRef actorRef = system.actorOf(EchoActor.props(mockTracer), "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+
+        List<RecordedEvent> events = record("io.opentracing.akka.Receive", () -> {
+            try {
+                Await.result(ask(actorRef, TracedMessage.wrap(span, "foo"), timeout), TestUtils.getDefaultDuration());
+                Await.result(ask(actorRef, 1, timeout), TestUtils.getDefaultDuration());
+
+                // Events are committed after the reply is sent.
+                Thread.sleep(100);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // Possibly recorded from different threads, so in any order.
+        assertEquals(2, events.size());
+        boolean tracedFirst = events.get(0).getClass("messageClass").getName().equals(String.class.getName());
+        RecordedEvent traced = events.get(tracedFirst ? 0 : 1);
+        assertEquals(actorRef.path().toString(), traced.getString("actorPath"));
+        assertEquals(String.class.getName(), traced.getClass("messageClass").getName());
+        assertEquals(span.context().traceId(), traced.getLong("traceId"));
+        assertEquals(span.context().spanId(), traced.getLong("spanId"));
+        assertTrue(traced.getDuration().toNanos() >= 0);
+
+        RecordedEvent untraced = events.get(tracedFirst ? 1 : 0);
+        assertEquals(Integer.class.getName(), untraced.getClass("messageClass").getName());
+        assertEquals(0, untraced.getLong("spanId"));
+    }
+}
@@ -0,0 +1,87 @@
+package io.opentracing.akka;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBuckets() {
+        // Contiguous, increasing buckets.
+        for (int i = 1; i < LatencyHistogram.BUCKETS; i++)
+            assertEquals(LatencyHistogram.bucketHighestValue(i - 1) + 1,
+                    LatencyHistogram.bucketHighestValue(i) - bucketWidth(i) + 1);
+
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketHighestValue(LatencyHistogram.BUCKETS - 1));
+
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long highest = LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    static long bucketWidth(int index) {
+        return index < 2 * LatencyHistogram.SUB_BUCKETS ? 1 : 1L << (index / LatencyHistogram.SUB_BUCKETS - 1);
+    }
+
+    @Test
+    public void testSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(1000000, snapshot.max());
+        assertEquals(500500.0, snapshot.mean(), 0.1);
+        assertWithin(500000, snapshot.valueAtPercentile(50));
+        assertWithin(990000, snapshot.valueAtPercentile(99));
+        assertEquals(1000000, snapshot.valueAtPercentile(100));
+    }
+
+    static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected,
+                actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        assertEquals(2, snapshot.count());
+        assertEquals(10, snapshot.max());
+        assertEquals(0, histogram.snapshot().count());
+        assertEquals(0, histogram.snapshot().valueAtPercentile(99));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int offset = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10000; j++)
+                    histogram.record(offset * 10000 + j);
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.count());
+        assertEquals(39999, snapshot.max());
+    }
+}
@@ -0,0 +1,60 @@
+package io.opentracing.akka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageSamplingPolicyTest {
+    interface Heartbeat {
+    }
+
+    static class Ping implements Heartbeat {
+    }
+
+    static class PlaceOrder {
+    }
+
+    static class Tick {
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalRate() throws Exception {
+        new MessageSamplingPolicy(1.5);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalMessageRates() throws Exception {
+        Map<Class<?>, Double> messageRates = new HashMap<Class<?>, Double>();
+        messageRates.put(Tick.class, -1.0);
+        new MessageSamplingPolicy(1, messageRates);
+    }
+
+    @Test
+    public void testRates() throws Exception {
+        Map<Class<?>, Double> messageRates = new HashMap<Class<?>, Double>();
+        messageRates.put(Heartbeat.class, 0.0);
+        messageRates.put(PlaceOrder.class, 1.0);
+        messageRates.put(Tick.class, 0.5);
+        MessageSamplingPolicy policy = new MessageSamplingPolicy(0.1, messageRates);
+
+        assertEquals(0.0, policy.rate(Ping.class), 0);
+        assertEquals(1.0, policy.rate(PlaceOrder.class), 0);
+        assertEquals(0.5, policy.rate(Tick.class), 0);
+        assertEquals(0.1, policy.rate(String.class), 0);
+
+        int traced = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(policy.shouldTrace(Ping.class));
+            assertTrue(policy.shouldTrace(PlaceOrder.class));
+            if (policy.shouldTrace(Tick.class))
+                traced++;
+        }
+
+        assertTrue(traced > 300 && traced < 700);
+    }
+}
@@ -0,0 +1,44 @@
+package io.opentracing.akka;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlowReceivePolicyTest {
+    static class Tick implements Serializable {
+    }
+
+    static class SubTick extends Tick {
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalThreshold() throws Exception {
+        new SlowReceivePolicy(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalMessageThresholds() throws Exception {
+        new SlowReceivePolicy(1, null, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testThresholds() throws Exception {
+        Map<Class<?>, Long> messageThresholds = new HashMap<Class<?>, Long>();
+        messageThresholds.put(Tick.class, 5L);
+        messageThresholds.put(Serializable.class, 10L);
+        SlowReceivePolicy policy = new SlowReceivePolicy(100, messageThresholds, TimeUnit.MILLISECONDS);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), policy.thresholdNanos(Tick.class));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), policy.thresholdNanos(SubTick.class));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), policy.thresholdNanos(String.class));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), policy.thresholdNanos(Object.class));
+
+        assertEquals(TimeUnit.SECONDS.toNanos(1),
+                new SlowReceivePolicy(1, TimeUnit.SECONDS).thresholdNanos(Tick.class));
+    }
+}
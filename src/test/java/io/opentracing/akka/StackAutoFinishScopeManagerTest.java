@@ -0,0 +1,121 @@
+package io.opentracing.akka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+
+import static akka.dispatch.Futures.future;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StackAutoFinishScopeManagerTest {
+    final StackAutoFinishScopeManager scopeManager = new StackAutoFinishScopeManager();
+    final MockTracer mockTracer = new MockTracer(scopeManager, MockTracer.Propagator.TEXT_MAP);
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+    }
+
+    @Test
+    public void testNested() {
+        assertNull(scopeManager.active());
+
+        try (Scope one = mockTracer.buildSpan("one").startActive(true)) {
+            assertSame(one, scopeManager.active());
+
+            try (Scope two = mockTracer.buildSpan("two").startActive(true)) {
+                assertSame(two, scopeManager.active());
+            }
+
+            assertSame(one, scopeManager.active());
+            assertEquals(1, mockTracer.finishedSpans().size());
+        }
+
+        assertNull(scopeManager.active());
+        assertEquals(2, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testDeepNesting() {
+        List<Scope> scopes = new ArrayList<Scope>();
+        for (int i = 0; i < StackAutoFinishScopeManager.INITIAL_CAPACITY * 10; i++) {
+            scopes.add(mockTracer.buildSpan(Integer.toString(i)).startActive(true));
+            assertSame(scopes.get(i), scopeManager.active());
+        }
+
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            assertSame(scopes.get(i), scopeManager.active());
+            scopes.get(i).close();
+        }
+
+        assertNull(scopeManager.active());
+        assertEquals(scopes.size(), mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testOutOfOrderClose() {
+        Scope one = mockTracer.buildSpan("one").startActive(true);
+        Scope two = mockTracer.buildSpan("two").startActive(true);
+
+        // Not the active Scope: ignored.
+        one.close();
+        assertSame(two, scopeManager.active());
+        assertEquals(0, mockTracer.finishedSpans().size());
+
+        two.close();
+        one.close();
+        assertNull(scopeManager.active());
+        assertEquals(2, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testCloseFromAnotherThread() throws Exception {
+        Scope scope = mockTracer.buildSpan("one").startActive(true);
+
+        Thread thread = new Thread(() -> scope.close());
+        thread.start();
+        thread.join();
+
+        assertSame(scope, scopeManager.active());
+        assertEquals(0, mockTracer.finishedSpans().size());
+
+        scope.close();
+        assertNull(scopeManager.active());
+    }
+
+    @Test
+    public void testContinuation() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer);
+        Future<Span> f = null;
+        Span span = null;
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            span = scope.span();
+            f = future(new Callable<Span>() {
+                @Override
+                public Span call() {
+                    return mockTracer.scopeManager().active().span();
+                }
+            }, ec);
+        }
+
+        assertEquals(span, Await.result(f, TestUtils.getDefaultDuration()));
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+                .until(TestUtils.finishedSpansSize(mockTracer), equalTo(1));
+        assertEquals(span, mockTracer.finishedSpans().get(0));
+    }
+}
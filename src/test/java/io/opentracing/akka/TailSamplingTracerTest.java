@@ -0,0 +1,201 @@
+package io.opentracing.akka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TailSamplingTracerTest {
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+    }
+
+    TailSamplingTracer newTracer(int maxTraces, int maxSpansPerTrace) {
+        return new TailSamplingTracer(mockTracer, 1, TimeUnit.SECONDS,
+                path -> path.startsWith("akka://testSystem/user/important"), maxTraces, maxSpansPerTrace);
+    }
+
+    @Test
+    public void testDropFastTraces() {
+        TailSamplingTracer tracer = newTracer(4, 8);
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            tracer.buildSpan("two").startActive(true).close();
+        }
+
+        assertEquals(0, mockTracer.finishedSpans().size());
+        assertEquals(0, tracer.keptTraces());
+        assertEquals(1, tracer.droppedTraces());
+    }
+
+    @Test
+    public void testKeepErrors() {
+        TailSamplingTracer tracer = newTracer(4, 8);
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            try (Scope child = tracer.buildSpan("two").startActive(true)) {
+                // Buffered until the root finishes.
+                child.span().setTag(Tags.ERROR.getKey(), true);
+            }
+
+            assertEquals(0, mockTracer.finishedSpans().size());
+        }
+
+        List<MockSpan> finishedSpans = mockTracer.finishedSpans();
+        assertEquals(2, finishedSpans.size());
+        assertEquals("two", finishedSpans.get(0).operationName());
+        assertEquals("one", finishedSpans.get(1).operationName());
+        assertEquals(finishedSpans.get(1).context().spanId(), finishedSpans.get(0).parentId());
+        assertEquals(1, tracer.keptTraces());
+    }
+
+    @Test
+    public void testKeepActorPaths() {
+        TailSamplingTracer tracer = newTracer(4, 8);
+
+        Span root = tracer.buildSpan("one").startManual();
+        tracer.buildSpan("two").asChildOf(root)
+            .withTag(Constants.ACTOR_PATH, "akka://testSystem/user/important")
+            .startManual().finish();
+        root.finish();
+
+        Span other = tracer.buildSpan("one").startManual();
+        tracer.buildSpan("two").asChildOf(other)
+            .withTag(Constants.ACTOR_PATH, "akka://testSystem/user/other")
+            .startManual().finish();
+        other.finish();
+
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertEquals(1, tracer.keptTraces());
+        assertEquals(1, tracer.droppedTraces());
+    }
+
+    @Test
+    public void testKeepSlowTraces() {
+        TailSamplingTracer tracer = newTracer(4, 8);
+
+        long start = System.currentTimeMillis() * 1000;
+        Span root = tracer.buildSpan("one").withStartTimestamp(start).startManual();
+        root.finish(start + TimeUnit.SECONDS.toMicros(2));
+
+        List<MockSpan> finishedSpans = mockTracer.finishedSpans();
+        assertEquals(1, finishedSpans.size());
+        assertEquals(start + TimeUnit.SECONDS.toMicros(2), finishedSpans.get(0).finishMicros());
+    }
+
+    @Test
+    public void testLateSpans() {
+        TailSamplingTracer tracer = newTracer(4, 8);
+
+        Span root = tracer.buildSpan("one").startManual();
+        Span child = tracer.buildSpan("two").asChildOf(root).startManual();
+        root.setTag(Tags.ERROR.getKey(), true);
+        root.finish();
+
+        assertEquals(1, mockTracer.finishedSpans().size());
+
+        // The decision is kept for Spans finishing after the root.
+        child.finish();
+        assertEquals(2, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testBounds() {
+        TailSamplingTracer tracer = newTracer(1, 2);
+
+        Span root = tracer.buildSpan("one").startManual();
+        root.setTag(Tags.ERROR.getKey(), true);
+        for (int i = 0; i < 3; i++)
+            tracer.buildSpan("child").asChildOf(root).startManual().finish();
+        root.finish();
+
+        // Only the last child and the root fit in the buffer.
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertEquals(2, tracer.evictedSpans());
+        assertEquals(1, tracer.keptTraces());
+
+        // The buffer is reused.
+        Span again = tracer.buildSpan("again").startManual();
+        again.setTag(Tags.ERROR.getKey(), true);
+        again.finish();
+        assertEquals(3, mockTracer.finishedSpans().size());
+        assertEquals(0, tracer.reclaimedTraces());
+        assertEquals(0, tracer.overflowedTraces());
+    }
+
+    @Test
+    public void testReclaimLeakedTraces() {
+        TailSamplingTracer tracer = newTracer(2, 4);
+
+        // Local roots never finished, e.g. leaked.
+        Span leaked = tracer.buildSpan("leaked").startManual();
+        tracer.buildSpan("leaked").startManual();
+
+        for (int i = 0; i < 3; i++) {
+            Span root = tracer.buildSpan("one").startManual();
+            root.setTag(Tags.ERROR.getKey(), true);
+            root.finish();
+        }
+
+        // The oldest pending trace gave its buffer up.
+        assertEquals(3, mockTracer.finishedSpans().size());
+        assertEquals(1, tracer.reclaimedTraces());
+        assertEquals(1, tracer.droppedTraces());
+        assertEquals(0, tracer.overflowedTraces());
+
+        // The reclaimed trace stays dropped.
+        leaked.setTag(Tags.ERROR.getKey(), true);
+        leaked.finish();
+        assertEquals(3, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testClock() {
+        TailSamplingTracer tracer = newTracer(4, 8);
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            scope.span().setTag(Tags.ERROR.getKey(), true);
+        }
+
+        // Both timestamps come from the same clock.
+        MockSpan span = mockTracer.finishedSpans().get(0);
+        assertTrue(span.finishMicros() >= span.startMicros());
+    }
+
+    @Test
+    public void testFinishOutsideLock() {
+        List<Boolean> lockHeld = new ArrayList<Boolean>();
+        TailSamplingTracer.TracedSpan[] root = new TailSamplingTracer.TracedSpan[1];
+        MockTracer reportingTracer = new MockTracer(new ThreadLocalScopeManager()) {
+            @Override
+            protected void onSpanFinished(MockSpan mockSpan) {
+                lockHeld.add(Thread.holdsLock(root[0].trace));
+            }
+        };
+        TailSamplingTracer tracer = new TailSamplingTracer(reportingTracer, 1, TimeUnit.SECONDS, null, 4, 8);
+
+        root[0] = (TailSamplingTracer.TracedSpan)tracer.buildSpan("one").startManual();
+        tracer.buildSpan("two").asChildOf(root[0]).startManual().finish();
+        root[0].setTag(Tags.ERROR.getKey(), true);
+        root[0].finish();
+
+        // The buffered Spans are reported once the trace lock is released.
+        assertEquals(2, lockHeld.size());
+        assertFalse(lockHeld.contains(true));
+    }
+}
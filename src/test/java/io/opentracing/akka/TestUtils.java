@@ -1,9 +1,11 @@
 package io.opentracing.akka;
 
 import java.util.concurrent.Callable;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 
 import akka.util.Timeout;
+import scala.concurrent.ExecutionContext;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 
@@ -17,6 +19,9 @@ public final class TestUtils {
     public final static int DEFAULT_TIMEOUT = 3;
     public final static int DEFAULT_CALLBACK_SYNC_TIMEOUT = 1;
 
+    /* Runs the tasks synchronously, so only the wrapping overhead is measured. */
+    public final static ExecutionContext CALLING_THREAD_CONTEXT = ExecutionContext.fromExecutor(Runnable::run);
+
     public static FiniteDuration getDefaultDuration() {
         return Duration.create(DEFAULT_TIMEOUT, "seconds");
     }
@@ -34,6 +39,25 @@ public final class TestUtils {
         };
     }
 
+    /* Average bytes allocated by the current thread per run of the specified operation,
+     * measured after a warmup phase (so class loading and JIT compilation are excluded). */
+    public static double allocatedBytesPerOp(Runnable op) {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int iterations = 100000;
+
+        for (int i = 0; i < iterations; i++)
+            op.run();
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++)
+            op.run();
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        return (double)(after - before) / iterations;
+    }
+
     /* Copied from opentracing-java/opentracing-util/src/test/java/io/opentracing/util/GlobalTracerTestUtil.java */
     public static void resetGlobalTracer() {
         try {
@@ -1,12 +1,26 @@
 package io.opentracing.akka;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.actor.DeadLetter;
 import akka.actor.Props;
 import akka.util.Timeout;
+import io.opentracing.References;
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
+import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 import io.opentracing.util.GlobalTracer;
 import io.opentracing.util.ThreadLocalScopeManager;
@@ -18,6 +32,7 @@ import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
 
 import static akka.pattern.Patterns.ask;
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -50,6 +65,14 @@ public class TracedAbstractActorTest {
         public TestActor(Tracer tracer) {
             super(tracer);
         }
+
+        public TestActor(Tracer tracer, PropagationPolicy policy) {
+            super(tracer, policy);
+        }
+
+        public TestActor(Tracer tracer, TracedActorSettings settings) {
+            super(tracer, settings);
+        }
     }
 
     static class SpanNullCheckActor extends TestActor {
@@ -78,10 +101,30 @@ public class TracedAbstractActorTest {
     }
 
     static class SpanCheckActor extends TestActor {
+        public SpanCheckActor() {
+            super();
+        }
+
+        public SpanCheckActor(PropagationPolicy policy) {
+            super(GlobalTracer.get(), policy);
+        }
+
+        public SpanCheckActor(MessageSamplingPolicy samplingPolicy) {
+            super(GlobalTracer.get(), new TracedActorSettings().withSamplingPolicy(samplingPolicy));
+        }
+
         public static Props props() {
             return Props.create(SpanCheckActor.class, () -> new SpanCheckActor());
         }
 
+        public static Props props(PropagationPolicy policy) {
+            return Props.create(SpanCheckActor.class, () -> new SpanCheckActor(policy));
+        }
+
+        public static Props props(MessageSamplingPolicy samplingPolicy) {
+            return Props.create(SpanCheckActor.class, () -> new SpanCheckActor(samplingPolicy));
+        }
+
         @Override
         public Receive createReceive() {
             return receiveBuilder()
@@ -109,6 +152,369 @@ public class TracedAbstractActorTest {
         assertTrue(isSpanSame);
     }
 
+    @Test
+    public void testPolicy() throws Exception {
+        ActorRef actorRef = system.actorOf(SpanCheckActor.props(span -> false), "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        Future<Object> future = null;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            Object message = TracedMessage.wrap(scope.span() /* message */);
+            future = ask(actorRef, message, timeout);
+        }
+
+        Boolean isSpanSame = (Boolean)Await.result(future, TestUtils.getDefaultDuration());
+        assertFalse(isSpanSame);
+    }
+
+    @Test
+    public void testSamplingPolicy() throws Exception {
+        ActorRef tracedRef = system.actorOf(SpanCheckActor.props(new MessageSamplingPolicy(0,
+                        Collections.<Class<?>, Double>singletonMap(Span.class, 1.0))), "actorOne");
+        ActorRef untracedRef = system.actorOf(SpanCheckActor.props(new MessageSamplingPolicy(1,
+                        Collections.<Class<?>, Double>singletonMap(Span.class, 0.0))), "actorTwo");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        Future<Object> traced = null;
+        Future<Object> untraced = null;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            traced = ask(tracedRef, TracedMessage.wrap(scope.span() /* message */), timeout);
+            untraced = ask(untracedRef, TracedMessage.wrap(scope.span() /* message */), timeout);
+        }
+
+        assertTrue((Boolean)Await.result(traced, TestUtils.getDefaultDuration()));
+        assertFalse((Boolean)Await.result(untraced, TestUtils.getDefaultDuration()));
+    }
+
+    static class LinkActor extends TestActor {
+        final List<Span> spans;
+
+        public LinkActor(List<Span> spans) {
+            this.spans = spans;
+        }
+
+        public static Props props(List<Span> spans) {
+            return Props.create(LinkActor.class, () -> new LinkActor(spans));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .match(Integer.class, x -> {
+                    spans.add(tracer().activeSpan());
+                    if (x > 0)
+                        getSelf().tell(TracedMessage.link(tracer().activeSpan(), x - 1, 2), getSelf());
+                })
+                .build();
+        }
+    }
+
+    @Test
+    public void testLinks() throws Exception {
+        List<Span> spans = new CopyOnWriteArrayList<Span>();
+        ActorRef actorRef = system.actorOf(LinkActor.props(spans), "actorOne");
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        actorRef.tell(TracedMessage.link(span, 3, 2), ActorRef.noSender());
+
+        // Two links are followed, after which propagation stops.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> spans.size() == 4);
+        assertEquals(2, mockTracer.finishedSpans().size());
+        assertNull(spans.get(2));
+        assertNull(spans.get(3));
+
+        MockSpan first = mockTracer.finishedSpans().get(0);
+        MockSpan second = mockTracer.finishedSpans().get(1);
+        assertEquals(Constants.RECEIVE_OPERATION_NAME, first.operationName());
+        assertEquals(References.FOLLOWS_FROM, first.references().get(0).getReferenceType());
+        assertEquals(span.context().spanId(), first.references().get(0).getContext().spanId());
+        assertEquals("1", first.getBaggageItem(Constants.CHAIN_DEPTH_BAGGAGE_ITEM));
+        assertEquals(first.context().spanId(), second.references().get(0).getContext().spanId());
+        assertEquals("2", second.getBaggageItem(Constants.CHAIN_DEPTH_BAGGAGE_ITEM));
+    }
+
+    static class CoalescingActor extends TestActor {
+        public CoalescingActor(CoalescingPolicy coalescingPolicy) {
+            super(GlobalTracer.get(), new TracedActorSettings().withCoalescingPolicy(coalescingPolicy));
+        }
+
+        public static Props props(CoalescingPolicy coalescingPolicy) {
+            return Props.create(CoalescingActor.class, () -> new CoalescingActor(coalescingPolicy));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        ActorRef actorRef = system.actorOf(CoalescingActor.props(new CoalescingPolicy(1, TimeUnit.MINUTES)),
+                "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        for (int i = 0; i < 10; i++)
+            actorRef.tell(TracedMessage.wrap(span, "foo"), ActorRef.noSender());
+        Await.result(ask(actorRef, TracedMessage.wrap(span, 1), timeout), TestUtils.getDefaultDuration());
+
+        // A message of another class closes the summary.
+        assertEquals(1, mockTracer.finishedSpans().size());
+        MockSpan summary = mockTracer.finishedSpans().get(0);
+        assertEquals(Constants.RECEIVE_OPERATION_NAME, summary.operationName());
+        assertEquals(span.context().spanId(), summary.parentId());
+        assertEquals(String.class.getName(), summary.tags().get(Constants.MESSAGE_TYPE));
+        assertEquals(10, summary.tags().get(Constants.COALESCED_COUNT));
+        long min = (Long)summary.tags().get(Constants.COALESCED_MIN_TIME);
+        long max = (Long)summary.tags().get(Constants.COALESCED_MAX_TIME);
+        long total = (Long)summary.tags().get(Constants.COALESCED_TOTAL_TIME);
+        assertTrue(min <= max && max <= total);
+        assertTrue(summary.finishMicros() - summary.startMicros() >= total / 1000 - 1);
+
+        // The pending one is recorded upon stop.
+        system.stop(actorRef);
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 2);
+        assertEquals(1, mockTracer.finishedSpans().get(1).tags().get(Constants.COALESCED_COUNT));
+    }
+
+    @Test
+    public void testCoalescingWindow() throws Exception {
+        ActorRef actorRef = system.actorOf(CoalescingActor.props(new CoalescingPolicy(100, TimeUnit.MILLISECONDS)),
+                "actorOne");
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        actorRef.tell(TracedMessage.wrap(span, "foo"), ActorRef.noSender());
+        actorRef.tell(TracedMessage.wrap(span, "bar"), ActorRef.noSender());
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+        assertEquals(2, mockTracer.finishedSpans().get(0).tags().get(Constants.COALESCED_COUNT));
+    }
+
+    @Test
+    public void testCoalescingMaxCountWindow() throws Exception {
+        ActorRef actorRef = system.actorOf(CoalescingActor.props(new CoalescingPolicy(100, TimeUnit.MILLISECONDS, 2)),
+                "actorOne");
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        for (int i = 0; i < 5; i++)
+            actorRef.tell(TracedMessage.wrap(span, "foo"), ActorRef.noSender());
+
+        // The pending flush is re-armed for the last summary, started after it was scheduled.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 3);
+        assertEquals(2, mockTracer.finishedSpans().get(0).tags().get(Constants.COALESCED_COUNT));
+        assertEquals(2, mockTracer.finishedSpans().get(1).tags().get(Constants.COALESCED_COUNT));
+        assertEquals(1, mockTracer.finishedSpans().get(2).tags().get(Constants.COALESCED_COUNT));
+    }
+
+    static class MetricsActor extends TestActor {
+        public MetricsActor(ActorMetrics metrics) {
+            super(GlobalTracer.get(), new TracedActorSettings().withMetrics(metrics));
+        }
+
+        public static Props props(ActorMetrics metrics) {
+            return Props.create(MetricsActor.class, () -> new MetricsActor(metrics));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> {
+                    Thread.sleep(10);
+                    getSender().tell(x, getSelf());
+                })
+                .build();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ActorMetrics metrics = new ActorMetrics(true);
+        ActorRef actorRef = system.actorOf(MetricsActor.props(metrics), "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        Await.result(ask(actorRef, TracedMessage.wrap(span, "foo"), timeout), TestUtils.getDefaultDuration());
+        Await.result(ask(actorRef, "bar", timeout), TestUtils.getDefaultDuration());
+
+        // Processing time is recorded after the reply is sent.
+        String path = actorRef.path().toString();
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> metrics.snapshot().get(path).processingTime().count() == 2);
+
+        ActorMetrics.Snapshot snapshot = metrics.snapshotAndReset().get(path);
+        assertEquals(1, snapshot.queueTime().count());
+        assertEquals(2, snapshot.processingTime().count());
+        assertTrue(snapshot.processingTime().max() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(0, metrics.snapshot().get(path).processingTime().count());
+
+        assertEquals(path, span.tags().get(Constants.ACTOR_PATH));
+        assertTrue(span.tags().get(Constants.QUEUE_TIME) instanceof Long);
+        assertTrue((Long)span.tags().get(Constants.PROCESSING_TIME) >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testFlightRecorder() throws Exception {
+        FlightRecorder recorder = new FlightRecorder(16);
+        ActorMetrics metrics = new ActorMetrics(false, recorder);
+        ActorRef actorRef = system.actorOf(MetricsActor.props(metrics), "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        Await.result(ask(actorRef, TracedMessage.wrap(span, "foo"), timeout), TestUtils.getDefaultDuration());
+        Await.result(ask(actorRef, "bar", timeout), TestUtils.getDefaultDuration());
+
+        // Only traced messages are recorded, after the reply is sent.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> recorder.getRecordedSpans() == 1);
+
+        Path file = Files.createTempFile("flight", ".bin");
+        try {
+            recorder.dump(file);
+            FlightRecorder.Record record = FlightRecorder.read(file).get(0);
+            assertEquals(FlightRecorder.RECEIVE, record.kind());
+            assertEquals(actorRef.path().toString(), record.actorPath());
+            assertEquals(String.class.getName(), record.name());
+            assertEquals(0, record.spanId()); // No SpanIds registered.
+            assertTrue(record.endTime() - record.startTime() >= TimeUnit.MILLISECONDS.toNanos(10));
+        } finally {
+            Files.delete(file);
+        }
+
+        assertNull(span.tags().get(Constants.ACTOR_PATH));
+    }
+
+    @Test
+    public void testFlightRecorderMBean() throws Exception {
+        FlightRecorder recorder = new FlightRecorder(16);
+        ActorMetrics metrics = new ActorMetrics(false, recorder);
+        ActorSystem recordedSystem = ActorSystem.create("recordedSystem");
+        ObjectName objectName = FlightRecorder.objectName("recordedSystem");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ActorRef actorRef = recordedSystem.actorOf(MetricsActor.props(metrics), "actorOne");
+            Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+            // Registered by the first message, traced or not.
+            Await.result(ask(actorRef, "foo", timeout), TestUtils.getDefaultDuration());
+            assertEquals(16, server.getAttribute(objectName, "Capacity"));
+        } finally {
+            Await.result(recordedSystem.terminate(), TestUtils.getDefaultDuration());
+        }
+
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    static class DeadlineActor extends TestActor {
+        public DeadlineActor(DeadlinePolicy deadlinePolicy) {
+            super(GlobalTracer.get(), new TracedActorSettings().withDeadlinePolicy(deadlinePolicy));
+        }
+
+        public static Props props(DeadlinePolicy deadlinePolicy) {
+            return Props.create(DeadlineActor.class, () -> new DeadlineActor(deadlinePolicy));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DEAD_LETTER);
+        ActorRef actorRef = system.actorOf(DeadlineActor.props(deadlinePolicy), "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        List<Object> deadLetters = new CopyOnWriteArrayList<Object>();
+        ActorRef listener = system.actorOf(Props.create(DeadLetterListener.class,
+                    () -> new DeadLetterListener(deadLetters)), "listener");
+        system.eventStream().subscribe(listener, DeadLetter.class);
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        DeadlinePolicy.setDeadline(span, 1, TimeUnit.MINUTES);
+        assertEquals("foo", Await.result(ask(actorRef, TracedMessage.wrap(span, "foo"), timeout),
+                    TestUtils.getDefaultDuration()));
+
+        DeadlinePolicy.setDeadlineAt(span, System.currentTimeMillis() - 1);
+        actorRef.tell(TracedMessage.wrap(span, "bar"), ActorRef.noSender());
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> deadLetters.contains("bar"));
+        assertEquals(1, deadlinePolicy.expiredCount());
+    }
+
+    static class SlowActor extends TestActor {
+        public SlowActor(SlowReceivePolicy slowReceivePolicy) {
+            super(GlobalTracer.get(), new TracedActorSettings().withSlowReceivePolicy(slowReceivePolicy));
+        }
+
+        public static Props props(SlowReceivePolicy slowReceivePolicy) {
+            return Props.create(SlowActor.class, () -> new SlowActor(slowReceivePolicy));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchEquals("slow", x -> {
+                    Thread.sleep(20);
+                    getSender().tell(x, getSelf());
+                })
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    @Test
+    public void testSlowReceive() throws Exception {
+        SlowReceivePolicy slowReceivePolicy = new SlowReceivePolicy(60000,
+                Collections.<Class<?>, Long>singletonMap(CharSequence.class, 10L), TimeUnit.MILLISECONDS);
+        ActorRef actorRef = system.actorOf(SlowActor.props(slowReceivePolicy), "actorOne");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        Await.result(ask(actorRef, TracedMessage.wrap(span, "fast"), timeout), TestUtils.getDefaultDuration());
+        Await.result(ask(actorRef, TracedMessage.wrap(span, "slow"), timeout), TestUtils.getDefaultDuration());
+
+        // Recorded after the reply is sent, only for the slow message.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+
+        MockSpan slowSpan = mockTracer.finishedSpans().get(0);
+        assertEquals(Constants.RECEIVE_OPERATION_NAME, slowSpan.operationName());
+        assertEquals(span.context().spanId(), slowSpan.parentId());
+        assertEquals(String.class.getName(), slowSpan.tags().get(Constants.MESSAGE_TYPE));
+        assertTrue((Long)slowSpan.tags().get(Constants.PROCESSING_TIME) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(slowSpan.finishMicros() - slowSpan.startMicros() >= TimeUnit.MILLISECONDS.toMicros(20));
+
+        // Both timestamps derive from the measured nanos.
+        long processingMicros = (Long)slowSpan.tags().get(Constants.PROCESSING_TIME) / 1000;
+        assertTrue(Math.abs(slowSpan.finishMicros() - slowSpan.startMicros() - processingMicros) <= 1);
+    }
+
+    static class DeadLetterListener extends AbstractActor {
+        final List<Object> messages;
+
+        public DeadLetterListener(List<Object> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .match(DeadLetter.class, x -> messages.add(x.message()))
+                .build();
+        }
+    }
+
     @Test
     public void testNoWrapMessage() throws Exception {
         ActorRef actorRef = system.actorOf(SpanCheckActor.props(), "actorOne");
@@ -6,7 +6,9 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import akka.actor.ActorSystem;
 import akka.dispatch.Mapper;
 import akka.dispatch.OnComplete;
 import io.opentracing.Scope;
@@ -14,6 +16,8 @@ import io.opentracing.Span;
 import io.opentracing.tag.Tags;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracer;
+import io.opentracing.noop.NoopTracerFactory;
 import io.opentracing.util.ThreadLocalScopeManager;
 import org.junit.After;
 import org.junit.Before;
@@ -31,6 +35,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class TracedAutoFinishExecutionContextTest {
     final MockTracer mockTracer = new MockTracer(new AutoFinishScopeManager(),
@@ -51,6 +57,101 @@ public class TracedAutoFinishExecutionContextTest {
         new TracedAutoFinishExecutionContext(ExecutionContext.global(), null);
     }
 
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalSettings() throws Exception {
+        new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer, null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCreateSpansUnsupported() throws Exception {
+        new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer,
+                new TracedExecutionSettings().withCreateSpans(true));
+    }
+
+    @Test
+    public void testPolicy() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer,
+                new TracedExecutionSettings().withPropagationPolicy(span -> false));
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            assertSame(ExecutionContext.global(), ec.prepare());
+        }
+
+        // No reference was captured, so the Span is finished right away.
+        assertEquals(1, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DROP);
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(TestUtils.CALLING_THREAD_CONTEXT, mockTracer,
+                new TracedExecutionSettings().withDeadlinePolicy(deadlinePolicy));
+        AtomicInteger runs = new AtomicInteger();
+
+        ExecutionContext prepared;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            DeadlinePolicy.setDeadlineAt(scope.span(), System.currentTimeMillis() - 1);
+            prepared = ec.prepare();
+        }
+
+        // The skipped task still releases its reference.
+        assertEquals(0, mockTracer.finishedSpans().size());
+        prepared.execute(() -> runs.incrementAndGet());
+
+        assertEquals(0, runs.get());
+        assertEquals(1, deadlinePolicy.expiredCount());
+        assertEquals(1, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testDeadlineFailsFuture() throws Exception {
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DEAD_LETTER);
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer,
+                new TracedExecutionSettings().withDeadlinePolicy(deadlinePolicy));
+        AtomicInteger runs = new AtomicInteger();
+
+        Future<Integer> f;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            DeadlinePolicy.setDeadlineAt(scope.span(), System.currentTimeMillis() - 1);
+            f = TracedFutures.future(() -> runs.incrementAndGet(), ec);
+        }
+
+        Await.ready(f, TestUtils.getDefaultDuration());
+        assertTrue(f.value().get().failed().get() instanceof DeadlineExceededException);
+        assertEquals(0, runs.get());
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(TestUtils.CALLING_THREAD_CONTEXT, mockTracer,
+                new TracedExecutionSettings().withMetrics(metrics));
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            ec.prepare().execute(() -> {});
+        }
+
+        assertEquals(1, metrics.snapshot().schedulingDelay().count());
+        assertEquals(1, metrics.snapshot().runTime().count());
+
+        // No threshold, no logs.
+        assertEquals(1, mockTracer.finishedSpans().size());
+        assertEquals(0, mockTracer.finishedSpans().get(0).logEntries().size());
+    }
+
+    @Test
+    public void testNoopTracer() throws Exception {
+        NoopTracer tracer = NoopTracerFactory.create();
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), tracer);
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            assertSame(ExecutionContext.global(), ec.prepare());
+        }
+    }
+
     @Test
     public void testSimple() throws Exception {
         ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer);
@@ -114,6 +215,37 @@ public class TracedAutoFinishExecutionContextTest {
         assertEquals(5, mockTracer.finishedSpans().get(0).tags().size());
     }
 
+    @Test
+    public void testMultipleStriped() throws Exception {
+        MockTracer tracer = new MockTracer(new AutoFinishScopeManager(AutoFinishScopeManager.RefCounting.STRIPED),
+            MockTracer.Propagator.TEXT_MAP);
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), tracer);
+        List<Future<Span>> futures = new LinkedList<Future<Span>>();
+
+        try (Scope scope = tracer.buildSpan("one").startActive(true)) {
+            for (int i = 0; i < 100; i++) {
+                final String tag = Integer.toString(i);
+                futures.add(future(new Callable<Span>() {
+                    @Override
+                    public Span call() {
+                        Span activeSpan = tracer.scopeManager().active().span();
+                        activeSpan.setTag(tag, Boolean.TRUE);
+                        return activeSpan;
+                    }
+                }, ec));
+            }
+
+            // Wait while the owner Scope is still open, so the stripes are used.
+            Await.result(sequence(futures, ExecutionContext.global()), TestUtils.getDefaultDuration());
+            assertEquals(0, tracer.finishedSpans().size());
+        }
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+                .until(TestUtils.finishedSpansSize(tracer), equalTo(1));
+        assertEquals(1, tracer.finishedSpans().size());
+        assertEquals(100, tracer.finishedSpans().get(0).tags().size());
+    }
+
     @Test
     public void testPipeline() throws Exception {
         ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer);
@@ -188,4 +320,64 @@ public class TracedAutoFinishExecutionContextTest {
         assertEquals(1, mockTracer.finishedSpans().size());
         assertEquals(3, mockTracer.finishedSpans().get(0).tags().size());
     }
+
+    @Test
+    public void testNoAllocationWithoutActiveSpan() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(TestUtils.CALLING_THREAD_CONTEXT, mockTracer);
+        Runnable task = () -> {};
+
+        double bytesPerOp = TestUtils.allocatedBytesPerOp(() -> ec.prepare().execute(task));
+        assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp < 1);
+    }
+
+    @Test
+    public void testAllocationWithActiveSpan() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(TestUtils.CALLING_THREAD_CONTEXT, mockTracer);
+        Runnable task = () -> {};
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            // Only the prepared task and the reactivated Scope are expected.
+            double bytesPerOp = TestUtils.allocatedBytesPerOp(() -> ec.prepare().execute(task));
+            assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp <= 64);
+        }
+
+        assertEquals(1, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testBatchedChain() throws Exception {
+        ActorSystem system = ActorSystem.create("testSystem");
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(system.dispatcher(), mockTracer);
+        Future<Integer> f = null;
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            f = future(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return 0;
+                }
+            }, ec);
+
+            for (int i = 0; i < 5; i++) {
+                f = f.map(new Mapper<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer n) {
+                        mockTracer.scopeManager().active().span().setTag(n.toString(), Boolean.TRUE);
+                        return n + 1;
+                    }
+                }, ec);
+            }
+        }
+
+        try {
+            assertEquals(5, (int)Await.result(f, TestUtils.getDefaultDuration()));
+        } finally {
+            system.terminate();
+        }
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+                .until(TestUtils.finishedSpansSize(mockTracer), equalTo(1));
+        assertEquals(1, mockTracer.finishedSpans().size());
+        assertEquals(5, mockTracer.finishedSpans().get(0).tags().size());
+    }
 }
@@ -1,16 +1,25 @@
 package io.opentracing.akka;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import akka.actor.ActorSystem;
+import akka.dispatch.Batchable;
+import akka.dispatch.Mapper;
 import akka.dispatch.OnComplete;
 import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 import io.opentracing.tag.Tags;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
 import io.opentracing.util.ThreadLocalScopeManager;
 import org.junit.After;
 import org.junit.Before;
@@ -26,7 +35,9 @@ import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class TracedExecutionContextTest {
@@ -106,6 +117,224 @@ public class TracedExecutionContextTest {
         assertEquals(finishedSpans.get(1).context().spanId(), finishedSpans.get(0).parentId());
     }
 
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalPolicy() throws Exception {
+        new TracedExecutionSettings().withPropagationPolicy(null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalSettings() throws Exception {
+        new TracedExecutionContext(ExecutionContext.global(), mockTracer, null);
+    }
+
+    @Test
+    public void testPolicy() throws Exception {
+        ExecutionContext ec = new TracedExecutionContext(ExecutionContext.global(), mockTracer,
+                new TracedExecutionSettings()
+                    .withCreateSpans(true)
+                    .withPropagationPolicy(span -> !"unsampled".equals(((MockSpan)span).operationName())));
+
+        try (Scope scope = mockTracer.buildSpan("unsampled").startActive(true)) {
+            assertSame(ExecutionContext.global(), ec.prepare());
+        }
+        try (Scope scope = mockTracer.buildSpan("sampled").startActive(true)) {
+            assertNotSame(ExecutionContext.global(), ec.prepare());
+        }
+    }
+
+    /* Runs tasks on the calling thread, recording reported failures. */
+    static class RecordingExecutionContext implements ExecutionContext {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void reportFailure(Throwable cause) {
+            failures.add(cause);
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        RecordingExecutionContext recording = new RecordingExecutionContext();
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DEAD_LETTER);
+        ExecutionContext ec = new TracedExecutionContext(recording, mockTracer,
+                new TracedExecutionSettings().withDeadlinePolicy(deadlinePolicy));
+        AtomicInteger runs = new AtomicInteger();
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            DeadlinePolicy.setDeadline(scope.span(), 1, TimeUnit.MINUTES);
+            ec.prepare().execute(() -> runs.incrementAndGet());
+
+            DeadlinePolicy.setDeadlineAt(scope.span(), System.currentTimeMillis() - 1);
+            ec.prepare().execute(() -> runs.incrementAndGet());
+        }
+
+        assertEquals(1, runs.get());
+        assertEquals(1, deadlinePolicy.expiredCount());
+        assertEquals(1, recording.failures.size());
+        assertTrue(recording.failures.get(0) instanceof DeadlineExceededException);
+    }
+
+    @Test
+    public void testDeadlineFailsFuture() throws Exception {
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DROP);
+        ExecutionContext ec = new TracedExecutionContext(ExecutionContext.global(), mockTracer,
+                new TracedExecutionSettings().withDeadlinePolicy(deadlinePolicy));
+        AtomicInteger runs = new AtomicInteger();
+
+        Future<Integer> f;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            DeadlinePolicy.setDeadlineAt(scope.span(), System.currentTimeMillis() - 1);
+            f = TracedFutures.future(() -> runs.incrementAndGet(), ec);
+        }
+
+        // The skipped task fails its Future instead of leaving it pending.
+        Await.ready(f, TestUtils.getDefaultDuration());
+        assertTrue(f.value().get().failed().get() instanceof DeadlineExceededException);
+        assertEquals(0, runs.get());
+        assertEquals(1, deadlinePolicy.expiredCount());
+    }
+
+    @Test
+    public void testDeadlineCreateSpans() throws Exception {
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DROP);
+        RecordingExecutionContext recording = new RecordingExecutionContext();
+        ExecutionContext ec = new TracedExecutionContext(recording, mockTracer,
+                new TracedExecutionSettings().withCreateSpans(true).withDeadlinePolicy(deadlinePolicy));
+        AtomicInteger runs = new AtomicInteger();
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            DeadlinePolicy.setDeadlineAt(scope.span(), System.currentTimeMillis() - 1);
+
+            // The created Span inherits the deadline, and is finished anyway.
+            ec.prepare().execute(() -> runs.incrementAndGet());
+        }
+
+        assertEquals(0, runs.get());
+        assertEquals(1, deadlinePolicy.expiredCount());
+        assertEquals(1, recording.failures.size());
+        assertEquals(2, mockTracer.finishedSpans().size());
+    }
+
+    /* Queues tasks until explicitly run. */
+    static class DeferredExecutionContext extends RecordingExecutionContext {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.add(runnable);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks)
+                task.run();
+
+            tasks.clear();
+        }
+    }
+
+    @Test
+    public void testLazySpans() throws Exception {
+        DeferredExecutionContext deferred = new DeferredExecutionContext();
+        ExecutionContext ec = new TracedExecutionContext(deferred, mockTracer,
+                new TracedExecutionSettings().withCreateSpans(true).withLazySpans(true));
+        AtomicReference<Span> executeSpan = new AtomicReference<Span>();
+
+        try (Scope scope = mockTracer.buildSpan("parent").startActive(true)) {
+            ec.prepare().execute(() -> executeSpan.set(mockTracer.activeSpan()));
+        }
+
+        // Nothing created while queued.
+        assertEquals(1, mockTracer.finishedSpans().size());
+        MockSpan parentSpan = mockTracer.finishedSpans().get(0);
+
+        deferred.runAll();
+        assertEquals(2, mockTracer.finishedSpans().size());
+
+        MockSpan span = mockTracer.finishedSpans().get(1);
+        assertSame(span, executeSpan.get());
+        assertEquals(Constants.EXECUTE_OPERATION_NAME, span.operationName());
+        assertEquals(parentSpan.context().spanId(), span.parentId());
+        assertTrue(span.startMicros() >= parentSpan.finishMicros());
+
+        // Without an active Span, a new trace is started.
+        ec.prepare().execute(() -> {});
+        deferred.runAll();
+        assertEquals(3, mockTracer.finishedSpans().size());
+        assertEquals(0, mockTracer.finishedSpans().get(2).parentId());
+    }
+
+    @Test
+    public void testLazySpansDeadline() throws Exception {
+        DeadlinePolicy deadlinePolicy = new DeadlinePolicy(DeadlinePolicy.Action.DROP);
+        ExecutionContext ec = new TracedExecutionContext(new RecordingExecutionContext(), mockTracer,
+                new TracedExecutionSettings().withCreateSpans(true).withLazySpans(true)
+                    .withDeadlinePolicy(deadlinePolicy));
+        AtomicInteger runs = new AtomicInteger();
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            DeadlinePolicy.setDeadlineAt(scope.span(), System.currentTimeMillis() - 1);
+            ec.prepare().execute(() -> runs.incrementAndGet());
+        }
+
+        // Skipped before creating any Span.
+        assertEquals(0, runs.get());
+        assertEquals(1, mockTracer.finishedSpans().size());
+    }
+
+    /* Runs tasks on the calling thread, after a delay. */
+    static class DelayedExecutionContext extends RecordingExecutionContext {
+        @Override
+        public void execute(Runnable runnable) {
+            sleep(20);
+            runnable.run();
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ExecutionMetrics metrics = new ExecutionMetrics(5, TimeUnit.MILLISECONDS);
+        ExecutionContext ec = new TracedExecutionContext(new DelayedExecutionContext(), mockTracer,
+                new TracedExecutionSettings().withMetrics(metrics));
+
+        MockSpan span;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            span = (MockSpan)scope.span();
+            ec.prepare().execute(() -> sleep(10));
+            ec.prepare().execute(() -> {});
+        }
+
+        ExecutionMetrics.Snapshot snapshot = metrics.snapshotAndReset();
+        assertEquals(2, snapshot.schedulingDelay().count());
+        assertTrue(snapshot.schedulingDelay().valueAtPercentile(0) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(snapshot.runTime().max() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(0, metrics.snapshot().runTime().count());
+
+        // Both tasks were delayed over the threshold.
+        assertEquals(2, span.logEntries().size());
+        Map<String, ?> fields = span.logEntries().get(0).fields();
+        assertEquals(Constants.SLOW_EXECUTION_EVENT, fields.get("event"));
+        assertTrue((Long)fields.get(Constants.RUN_TIME) >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testNoopTracer() throws Exception {
+        ExecutionContext ec = new TracedExecutionContext(ExecutionContext.global(), NoopTracerFactory.create(), true);
+        assertSame(ExecutionContext.global(), ec.prepare());
+    }
+
     @Test
     public void testNoActiveSpan() throws Exception {
         ExecutionContext ec = new TracedExecutionContext(ExecutionContext.global(), mockTracer);
@@ -182,4 +411,145 @@ public class TracedExecutionContextTest {
             assertTrue(tags.containsKey("done"));
         }
     }
+
+    @Test
+    public void testNoAllocationWithoutActiveSpan() throws Exception {
+        ExecutionContext ec = new TracedExecutionContext(TestUtils.CALLING_THREAD_CONTEXT, mockTracer);
+        Runnable task = () -> {};
+
+        double bytesPerOp = TestUtils.allocatedBytesPerOp(() -> ec.prepare().execute(task));
+        assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp < 1);
+    }
+
+    @Test
+    public void testAllocationWithActiveSpan() throws Exception {
+        ExecutionContext ec = new TracedExecutionContext(TestUtils.CALLING_THREAD_CONTEXT, mockTracer);
+        Runnable task = () -> {};
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(false)) {
+            // Only the prepared task and the activated Scope are expected.
+            double bytesPerOp = TestUtils.allocatedBytesPerOp(() -> ec.prepare().execute(task));
+            assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp <= 64);
+        }
+    }
+
+    @Test
+    public void testBatchable() throws Exception {
+        List<Runnable> submitted = new ArrayList<Runnable>();
+        ExecutionContext ec = new TracedExecutionContext(ExecutionContext.fromExecutor(submitted::add), mockTracer);
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            ec.prepare().execute(new Batchable() {
+                @Override
+                public boolean isBatchable() {
+                    return true;
+                }
+
+                @Override
+                public void run() {
+                }
+            });
+            ec.prepare().execute(() -> {});
+        }
+
+        assertEquals(2, submitted.size());
+        assertTrue(((Batchable)submitted.get(0)).isBatchable());
+        assertFalse(((Batchable)submitted.get(1)).isBatchable());
+    }
+
+    static class CountingScopeManager implements ScopeManager {
+        final ScopeManager scopeManager = new ThreadLocalScopeManager();
+        final AtomicInteger activations = new AtomicInteger();
+
+        @Override
+        public Scope activate(Span span, boolean finishOnClose) {
+            activations.incrementAndGet();
+            return scopeManager.activate(span, finishOnClose);
+        }
+
+        @Override
+        public Scope active() {
+            return scopeManager.active();
+        }
+    }
+
+    @Test
+    public void testBlockingOnNestedFuture() throws Exception {
+        ActorSystem system = ActorSystem.create("testSystem");
+        ExecutionContext ec = new TracedExecutionContext(system.dispatcher(), mockTracer);
+        Future<Integer> f;
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            f = future(() -> {
+                // Neither queued behind this task, nor serialized with each other.
+                Future<Integer> nested = future(() -> 1, ec);
+                Future<Integer> other = future(() -> 2, ec);
+                return Await.result(nested, TestUtils.getDefaultDuration())
+                    + Await.result(other, TestUtils.getDefaultDuration());
+            }, ec);
+        }
+
+        try {
+            assertEquals(3, (int)Await.result(f, Duration.create(2, TimeUnit.SECONDS)));
+        } finally {
+            system.terminate();
+        }
+    }
+
+    @Test
+    public void testBatchedChain() throws Exception {
+        CountingScopeManager scopeManager = new CountingScopeManager();
+        MockTracer tracer = new MockTracer(scopeManager, MockTracer.Propagator.TEXT_MAP);
+        ActorSystem system = ActorSystem.create("testSystem");
+        ExecutionContext ec = new TracedExecutionContext(system.dispatcher(), tracer);
+        CountDownLatch chained = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        Future<Integer> f = null;
+        Span span = null;
+        int activations = 0;
+
+        try (Scope scope = tracer.buildSpan("one").startActive(false)) {
+            span = scope.span();
+            activations = scopeManager.activations.get();
+            f = future(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    // Make sure the chain is registered before completing.
+                    chained.await();
+                    threads.add(Thread.currentThread());
+                    return 0;
+                }
+            }, ec);
+
+            for (int i = 0; i < 5; i++) {
+                f = f.map(new Mapper<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer n) {
+                        assertNotNull(tracer.scopeManager().active());
+                        tracer.scopeManager().active().span().setTag(n.toString(), Boolean.TRUE);
+                        threads.add(Thread.currentThread());
+                        return n + 1;
+                    }
+                }, ec);
+            }
+        }
+
+        chained.countDown();
+
+        try {
+            assertEquals(5, (int)Await.result(f, TestUtils.getDefaultDuration()));
+        } finally {
+            system.terminate();
+        }
+
+        // The whole chain ran on a single thread, under a single activation.
+        assertEquals(6, threads.size());
+        for (Thread thread : threads)
+            assertEquals(threads.get(0), thread);
+
+        assertEquals(1, scopeManager.activations.get() - activations);
+
+        span.finish();
+        assertEquals(5, tracer.finishedSpans().get(0).tags().size());
+    }
 }
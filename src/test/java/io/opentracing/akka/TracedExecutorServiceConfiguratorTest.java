@@ -0,0 +1,189 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.dispatch.DispatcherPrerequisites;
+import akka.util.Timeout;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.GlobalTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+
+import static akka.dispatch.Futures.future;
+import static akka.pattern.Patterns.ask;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class TracedExecutorServiceConfiguratorTest {
+    static final String CONFIG =
+        "traced-fork-join-dispatcher {\n" +
+        "  executor = \"io.opentracing.akka.TracedExecutorServiceConfigurator\"\n" +
+        "  traced-executor.metrics-interval = 50ms\n" +
+        "  shutdown-timeout = 1m\n" +
+        "}\n" +
+        "traced-metrics-dispatcher {\n" +
+        "  executor = \"io.opentracing.akka.TracedExecutorServiceConfiguratorTest$MetricsConfigurator\"\n" +
+        "}\n" +
+        "traced-thread-pool-dispatcher {\n" +
+        "  executor = \"io.opentracing.akka.TracedExecutorServiceConfigurator\"\n" +
+        "  traced-executor.executor = \"thread-pool-executor\"\n" +
+        "  traced-executor.metrics-interval = 50ms\n" +
+        "}\n";
+
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+    ActorSystem system;
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        GlobalTracer.register(mockTracer);
+
+        system = ActorSystem.create("testSystem",
+                ConfigFactory.parseString(CONFIG).withFallback(ConfigFactory.load()));
+    }
+
+    @After
+    public void after() throws Exception {
+        TestUtils.resetGlobalTracer();
+        system.terminate();
+    }
+
+    Object activeSpanIn(ExecutionContext ec, Span span) throws Exception {
+        Future<Object> f;
+        try (Scope scope = mockTracer.scopeManager().activate(span, false)) {
+            f = future(() -> {
+                Span active = mockTracer.activeSpan();
+                return active == null ? "none" : active;
+            }, ec);
+        }
+
+        return Await.result(f, TestUtils.getDefaultDuration());
+    }
+
+    @Test
+    public void testForkJoin() throws Exception {
+        ExecutionContext ec = system.dispatchers().lookup("traced-fork-join-dispatcher");
+        Span span = mockTracer.buildSpan("one").startManual();
+        assertEquals(span, activeSpanIn(ec, span));
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> ExecutorMetrics.get(system, "traced-fork-join-dispatcher").lastSample() != null);
+
+        ExecutorMetrics metrics = ExecutorMetrics.get(system, "traced-fork-join-dispatcher");
+        assertTrue(metrics.lastSample().poolSize() > 0);
+        assertTrue(metrics.queueDepth().count() > 0);
+    }
+
+    @Test
+    public void testThreadPool() throws Exception {
+        ExecutionContext ec = system.dispatchers().lookup("traced-thread-pool-dispatcher");
+        Span span = mockTracer.buildSpan("one").startManual();
+        assertEquals(span, activeSpanIn(ec, span));
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> ExecutorMetrics.get(system, "traced-thread-pool-dispatcher").lastSample() != null);
+        assertEquals(0, ExecutorMetrics.get(system, "traced-thread-pool-dispatcher").lastSample().stealCount());
+    }
+
+    @Test
+    public void testMetricsPerSystem() throws Exception {
+        ActorSystem otherSystem = ActorSystem.create("otherSystem",
+                ConfigFactory.parseString(CONFIG).withFallback(ConfigFactory.load()));
+        try {
+            system.dispatchers().lookup("traced-fork-join-dispatcher").execute(() -> {});
+            otherSystem.dispatchers().lookup("traced-fork-join-dispatcher").execute(() -> {});
+
+            await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+                .until(() -> ExecutorMetrics.get(otherSystem, "traced-fork-join-dispatcher") != null);
+
+            ExecutorMetrics metrics = ExecutorMetrics.get("testSystem", "traced-fork-join-dispatcher");
+            ExecutorMetrics otherMetrics = ExecutorMetrics.get("otherSystem", "traced-fork-join-dispatcher");
+            assertNotSame(metrics, otherMetrics);
+            assertEquals("otherSystem", otherMetrics.systemName());
+            assertTrue(ExecutorMetrics.all().containsKey("testSystem/traced-fork-join-dispatcher"));
+        } finally {
+            Await.ready(otherSystem.terminate(), TestUtils.getDefaultDuration());
+        }
+
+        // Unregistered once the executor is shut down.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> ExecutorMetrics.get("otherSystem", "traced-fork-join-dispatcher") == null);
+        assertNotNull(ExecutorMetrics.get(system, "traced-fork-join-dispatcher"));
+    }
+
+    public static class MetricsConfigurator extends TracedExecutorServiceConfigurator {
+        static final ExecutionMetrics METRICS = new ExecutionMetrics();
+
+        public MetricsConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+            super(config, prerequisites);
+        }
+
+        @Override
+        protected TracedExecutionSettings executionSettings(String id) {
+            return new TracedExecutionSettings().withMetrics(METRICS);
+        }
+    }
+
+    @Test
+    public void testExecutionSettings() throws Exception {
+        ExecutionContext ec = system.dispatchers().lookup("traced-metrics-dispatcher");
+        MetricsConfigurator.METRICS.reset();
+
+        Span span = mockTracer.buildSpan("one").startManual();
+        assertEquals(span, activeSpanIn(ec, span));
+
+        // Recorded right after the task completes its Future.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> MetricsConfigurator.METRICS.snapshot().runTime().count() == 1);
+
+        // Tasks without an active Span are not traced nor measured.
+        Await.result(future(() -> "none", ec), TestUtils.getDefaultDuration());
+        assertEquals(1, MetricsConfigurator.METRICS.snapshot().runTime().count());
+    }
+
+    @Test
+    public void testNoActiveSpan() throws Exception {
+        ExecutionContext ec = system.dispatchers().lookup("traced-fork-join-dispatcher");
+        Future<Object> f = future(() -> mockTracer.activeSpan() == null, ec);
+        assertEquals(true, Await.result(f, TestUtils.getDefaultDuration()));
+    }
+
+    static class ActiveSpanActor extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> getSender().tell(GlobalTracer.get().activeSpan() == null, getSelf()))
+                .build();
+        }
+    }
+
+    @Test
+    public void testMailboxNotTraced() throws Exception {
+        ActorRef actorRef = system.actorOf(Props.create(ActiveSpanActor.class, () -> new ActiveSpanActor())
+                .withDispatcher("traced-fork-join-dispatcher"), "one");
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+
+        Future<Object> f;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            f = ask(actorRef, "foo", timeout);
+        }
+
+        assertEquals(true, Await.result(f, TestUtils.getDefaultDuration()));
+    }
+}
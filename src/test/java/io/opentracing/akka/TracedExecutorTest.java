@@ -0,0 +1,148 @@
+package io.opentracing.akka;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TracedExecutorTest {
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+    final MockTracer autoFinishTracer = new MockTracer(new AutoFinishScopeManager());
+    ExecutorService executorService;
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        autoFinishTracer.reset();
+        executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void after() throws Exception {
+        executorService.shutdown();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalExecutor() throws Exception {
+        new TracedExecutor(null, mockTracer);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalTracer() throws Exception {
+        new TracedExecutor(executorService, null);
+    }
+
+    @Test
+    public void testCompletableFuture() throws Exception {
+        TracedExecutor executor = new TracedExecutor(executorService, mockTracer);
+
+        CompletableFuture<List<Span>> f;
+        Span span;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            span = scope.span();
+            f = CompletableFuture.supplyAsync(() -> mockTracer.activeSpan(), executor)
+                .thenApplyAsync(first -> Arrays.asList(first, mockTracer.activeSpan()), executor);
+        }
+
+        assertEquals(Arrays.asList(span, span), f.get(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoActiveSpan() throws Exception {
+        TracedExecutor executor = new TracedExecutor(executorService, mockTracer);
+        CompletableFuture<Span> f = CompletableFuture.supplyAsync(() -> mockTracer.activeSpan(), executor);
+        assertNull(f.get(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExecutorService() throws Exception {
+        ExecutorService executor = new TracedExecutorService(executorService, mockTracer);
+        Callable<Span> activeSpan = () -> mockTracer.activeSpan();
+
+        Span span;
+        List<Future<Span>> futures;
+        Future<Span> future;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            span = scope.span();
+            future = executor.submit(activeSpan);
+            futures = executor.invokeAll(Arrays.asList(activeSpan, activeSpan));
+        }
+
+        assertSame(span, future.get(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS));
+        for (Future<Span> f : futures)
+            assertSame(span, f.get());
+
+        executor.shutdown();
+        assertEquals(true, executor.awaitTermination(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testForkJoinPool() throws Exception {
+        TracedForkJoinPool pool = new TracedForkJoinPool(2, mockTracer);
+
+        Span span;
+        ForkJoinTask<Span> task;
+        CompletableFuture<Span> f;
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            span = scope.span();
+            task = pool.submit(() -> mockTracer.activeSpan());
+            f = CompletableFuture.supplyAsync(() -> mockTracer.activeSpan(), pool);
+        }
+
+        assertSame(span, task.get(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS));
+        assertSame(span, f.get(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAllocationWithActiveSpan() throws Exception {
+        TracedExecutor executor = new TracedExecutor(Runnable::run, mockTracer);
+        Runnable task = () -> {};
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(false)) {
+            // Same as TracedExecutionContext: the prepared task and the activated Scope.
+            double bytesPerOp = TestUtils.allocatedBytesPerOp(() -> executor.execute(task));
+            assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp <= 64);
+        }
+    }
+
+    @Test
+    public void testAutoFinish() throws Exception {
+        TracedExecutor executor = new TracedExecutor(executorService, autoFinishTracer, true);
+
+        CompletableFuture<Span> f;
+        try (Scope scope = autoFinishTracer.buildSpan("one").startActive(true)) {
+            f = CompletableFuture.supplyAsync(() -> {
+                TracedExecutionContextTest.sleep(100);
+                return autoFinishTracer.activeSpan();
+            }, executor).thenApplyAsync(x -> autoFinishTracer.activeSpan(), executor);
+        }
+
+        // Finished only once the last stage is done.
+        assertEquals(0, autoFinishTracer.finishedSpans().size());
+        Span span = f.get(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS);
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> autoFinishTracer.finishedSpans().size(), equalTo(1));
+        assertSame(span, autoFinishTracer.finishedSpans().get(0));
+    }
+}
@@ -0,0 +1,113 @@
+package io.opentracing.akka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Scope;
+import io.opentracing.mock.MockTracer;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+
+import static akka.dispatch.Futures.future;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TracedFuturesTest {
+    final MockTracer mockTracer = new MockTracer(new AutoFinishScopeManager(),
+        MockTracer.Propagator.TEXT_MAP);
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+    }
+
+    @Test
+    public void testSequence() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer);
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        Future<Iterable<Integer>> result;
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            for (int i = 0; i < 10; i++) {
+                final int value = i;
+                futures.add(future(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        latch.await();
+                        return value;
+                    }
+                }, ExecutionContext.global()));
+            }
+
+            result = TracedFutures.sequence(futures, ec);
+        }
+
+        // The reserved references keep the Span open until all the callbacks ran.
+        assertEquals(0, mockTracer.finishedSpans().size());
+        latch.countDown();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+                Await.result(result, TestUtils.getDefaultDuration()));
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+                .until(TestUtils.finishedSpansSize(mockTracer), equalTo(1));
+    }
+
+    @Test
+    public void testTraverseFailure() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer);
+        RuntimeException failure = new RuntimeException("failed");
+        Future<Iterable<String>> result;
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            result = TracedFutures.traverse(Arrays.asList(1, 2, 3), value -> {
+                if (value == 2)
+                    throw failure;
+
+                return future(() -> value.toString(), ExecutionContext.global());
+            }, ec);
+        }
+
+        try {
+            Await.result(result, TestUtils.getDefaultDuration());
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+
+        // Failed or not, every callback releases its reference.
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+                .until(TestUtils.finishedSpansSize(mockTracer), equalTo(1));
+    }
+
+    @Test
+    public void testEmptyAndInactive() throws Exception {
+        ExecutionContext ec = new TracedAutoFinishExecutionContext(ExecutionContext.global(), mockTracer);
+
+        try (Scope scope = mockTracer.buildSpan("one").startActive(true)) {
+            Future<Iterable<Integer>> empty = TracedFutures.sequence(new ArrayList<Future<Integer>>(), ec);
+            assertTrue(!Await.result(empty, TestUtils.getDefaultDuration()).iterator().hasNext());
+        }
+        assertEquals(1, mockTracer.finishedSpans().size());
+
+        Future<Iterable<String>> result = TracedFutures.traverse(Arrays.asList(1, 2),
+                value -> future(() -> value.toString(), ExecutionContext.global()), ec);
+        assertEquals(Arrays.asList("1", "2"), Await.result(result, TestUtils.getDefaultDuration()));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalExecutor() throws Exception {
+        TracedFutures.sequence(new ArrayList<Future<Integer>>(), null);
+    }
+}
@@ -0,0 +1,212 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.util.Timeout;
+import com.typesafe.config.ConfigFactory;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.GlobalTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+
+import static akka.dispatch.Futures.future;
+import static akka.pattern.Patterns.ask;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TracedMailboxTypeTest {
+    static final String CONFIG =
+        "traced-dispatcher {\n" +
+        "  type = \"io.opentracing.akka.TracedDispatcherConfigurator\"\n" +
+        "  executor = \"fork-join-executor\"\n" +
+        "  mailbox-type = \"io.opentracing.akka.TracedMailboxType\"\n" +
+        "}\n" +
+        "single-thread-traced-dispatcher {\n" +
+        "  type = \"io.opentracing.akka.TracedDispatcherConfigurator\"\n" +
+        "  executor = \"thread-pool-executor\"\n" +
+        "  thread-pool-executor.fixed-pool-size = 1\n" +
+        "  throughput = 1\n" +
+        "  mailbox-type = \"io.opentracing.akka.TracedMailboxType\"\n" +
+        "}\n" +
+        "traced-mailbox {\n" +
+        "  mailbox-type = \"io.opentracing.akka.TracedMailboxType\"\n" +
+        "}\n";
+
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+    ActorSystem system;
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        GlobalTracer.register(mockTracer);
+
+        system = ActorSystem.create("testSystem",
+                ConfigFactory.parseString(CONFIG).withFallback(ConfigFactory.load()));
+    }
+
+    @After
+    public void after() throws Exception {
+        TestUtils.resetGlobalTracer();
+        system.terminate();
+    }
+
+    /* Plain actor replying with its active Span, or a String if there is none. */
+    static class ActiveSpanActor extends AbstractActor {
+        public static Props props() {
+            return Props.create(ActiveSpanActor.class, () -> new ActiveSpanActor())
+                .withDispatcher("traced-dispatcher");
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> {
+                    Scope scope = GlobalTracer.get().scopeManager().active();
+                    getSender().tell(scope == null ? "none" : scope.span(), getSelf());
+                })
+                .build();
+        }
+    }
+
+    /*
+     * Messages sent before the actor is started go through a temporary queue,
+     * and reach the mailbox from another thread, so wait for it to be started.
+     */
+    ActorRef actorOf(Props props) throws Exception {
+        ActorRef actorRef = system.actorOf(props, "one");
+        askActiveSpan(actorRef, "start");
+        return actorRef;
+    }
+
+    Object askActiveSpan(ActorRef actorRef, Object message) throws Exception {
+        Timeout timeout = new Timeout(TestUtils.getDefaultDuration());
+        Future<Object> future = ask(actorRef, message, timeout);
+        return Await.result(future, TestUtils.getDefaultDuration());
+    }
+
+    @Test
+    public void testActiveSpan() throws Exception {
+        ActorRef actorRef = actorOf(ActiveSpanActor.props());
+
+        Span span = mockTracer.buildSpan("one").startManual();
+        Object result;
+        try (Scope scope = mockTracer.scopeManager().activate(span, true)) {
+            result = askActiveSpan(actorRef, "foo");
+        }
+
+        assertEquals(span, result);
+    }
+
+    @Test
+    public void testNoActiveSpan() throws Exception {
+        ActorRef actorRef = actorOf(ActiveSpanActor.props());
+        assertEquals("none", askActiveSpan(actorRef, "foo"));
+    }
+
+    @Test
+    public void testNoLeak() throws Exception {
+        ActorRef actorRef = actorOf(ActiveSpanActor.props());
+
+        Span span = mockTracer.buildSpan("one").startManual();
+        try (Scope scope = mockTracer.scopeManager().activate(span, true)) {
+            assertEquals(span, askActiveSpan(actorRef, "foo"));
+        }
+
+        // Neither the next message nor the next mailbox run see the previous Span.
+        for (int i = 0; i < 10; i++)
+            assertEquals("none", askActiveSpan(actorRef, "foo"));
+    }
+
+    @Test
+    public void testNoLeakAfterRun() throws Exception {
+        ActorRef actorRef = system.actorOf(ActiveSpanActor.props().withDispatcher("single-thread-traced-dispatcher"));
+        askActiveSpan(actorRef, "start");
+
+        Span span = mockTracer.buildSpan("one").startManual();
+        try (Scope scope = mockTracer.scopeManager().activate(span, true)) {
+            assertEquals(span, askActiveSpan(actorRef, "foo"));
+        }
+
+        // With a throughput of 1, the run ends without any further dequeue: the next task
+        // on the same (single) thread does not see the Span of the last message anyway.
+        ExecutionContext ec = system.dispatchers().lookup("single-thread-traced-dispatcher");
+        Future<Object> f = future(() -> mockTracer.activeSpan() == null ? "none" : mockTracer.activeSpan(), ec);
+        assertEquals("none", Await.result(f, TestUtils.getDefaultDuration()));
+    }
+
+    @Test
+    public void testTracedMessage() throws Exception {
+        ActorRef actorRef = actorOf(ActiveSpanActor.props());
+
+        Span span = mockTracer.buildSpan("one").startManual();
+        Object result = askActiveSpan(actorRef, TracedMessage.wrap(span, "foo"));
+        assertEquals(span, result);
+        assertNull(mockTracer.scopeManager().active());
+    }
+
+    @Test
+    public void testMessageUnwrapped() throws Exception {
+        ActorRef actorRef = actorOf(Props.create(EchoActor.class, () -> new EchoActor())
+                .withDispatcher("traced-dispatcher"));
+
+        Span span = mockTracer.buildSpan("one").startManual();
+        assertEquals("foo", askActiveSpan(actorRef, TracedMessage.wrap(span, "foo")));
+    }
+
+    static class EchoActor extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> getSender().tell(x, getSelf()))
+                .build();
+        }
+    }
+
+    @Test
+    public void testQueue() {
+        TracedMessageQueue queue = new TracedMessageQueue(mockTracer, PropagationPolicy.SKIP_NOOP, null);
+        assertFalse(queue.hasMessages());
+        assertNull(queue.dequeue());
+
+        queue.enqueue(null, akka.dispatch.Envelope.apply("one", ActorRef.noSender()));
+        queue.enqueue(null, akka.dispatch.Envelope.apply("two", ActorRef.noSender()));
+        assertTrue(queue.hasMessages());
+        assertEquals(2, queue.numberOfMessages());
+
+        assertEquals("one", queue.dequeue().message());
+        assertEquals("two", queue.dequeue().message());
+        assertFalse(queue.hasMessages());
+        assertNull(queue.dequeue());
+    }
+
+    @Test
+    public void testUntracedDispatcher() throws Exception {
+        // The Scopes activated by the mailbox would never be closed.
+        ActorRef actorRef = system.actorOf(Props.create(EchoActor.class, () -> new EchoActor())
+                .withMailbox("traced-mailbox"), "one");
+
+        // Its creation fails, stopping it.
+        Timeout timeout = new Timeout(Duration.create(500, TimeUnit.MILLISECONDS));
+        try {
+            Await.result(ask(actorRef, "foo", timeout), timeout.duration());
+            fail();
+        } catch (TimeoutException e) {
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package io.opentracing.akka;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Props;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.util.GlobalTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TracedMessageSerializerTest {
+    final AtomicInteger extractions = new AtomicInteger();
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager(), new BinaryPropagator());
+    ActorSystem system;
+    Serialization serialization;
+
+    /* Writes the trace/span ids as two longs. */
+    class BinaryPropagator implements MockTracer.Propagator {
+        @Override
+        public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+            ((ByteBuffer)carrier).putLong(ctx.traceId()).putLong(ctx.spanId());
+        }
+
+        @Override
+        public <C> MockSpan.MockContext extract(Format<C> format, C carrier) {
+            extractions.incrementAndGet();
+            ByteBuffer buffer = (ByteBuffer)carrier;
+            return new MockSpan.MockContext(buffer.getLong(), buffer.getLong(),
+                    Collections.<String, String>emptyMap());
+        }
+    }
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        GlobalTracer.register(mockTracer);
+
+        system = ActorSystem.create("testSystem");
+        serialization = (Serialization)SerializationExtension.apply(system);
+    }
+
+    @After
+    public void after() throws Exception {
+        TestUtils.resetGlobalTracer();
+        system.terminate();
+    }
+
+    @Test
+    public void testRegistered() {
+        Span span = mockTracer.buildSpan("one").startManual();
+        Serializer serializer = serialization.findSerializerFor(TracedMessage.wrap(span, "foo"));
+        assertTrue(serializer instanceof TracedMessageSerializer);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        byte[] payload = new byte[] { 1, 2, 3 };
+        byte[] bytes = serialization.serialize(TracedMessage.wrap(span, payload)).get();
+
+        // version, flags, serializer id, empty manifest, context length, two longs.
+        assertEquals(1 + 1 + 4 + 2 + 2 + 16, bytes.length - payload.length);
+
+        TracedMessage<?> result = (TracedMessage<?>)serialization.deserialize(bytes,
+                TracedMessageSerializer.IDENTIFIER, "").get();
+        assertArrayEquals(payload, (byte[])result.message());
+        assertNull(result.activeSpan());
+        assertSameContext(span, result.spanContext());
+    }
+
+    @Test
+    public void testLink() {
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        byte[] bytes = serialization.serialize(TracedMessage.link(span, "foo", 3)).get();
+
+        TracedMessage<?> result = (TracedMessage<?>)serialization.deserialize(bytes,
+                TracedMessageSerializer.IDENTIFIER, "").get();
+        assertTrue(result.isLink());
+        assertSameContext(span, result.spanContext());
+
+        bytes = serialization.serialize(TracedMessage.wrap(span, "foo")).get();
+        result = (TracedMessage<?>)serialization.deserialize(bytes, TracedMessageSerializer.IDENTIFIER, "").get();
+        assertFalse(result.isLink());
+    }
+
+    @Test
+    public void testVersion1() {
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        byte[] bytes = serialization.serialize(TracedMessage.link(span, "foo", 3)).get();
+
+        // Version 1 headers have no flags byte.
+        byte[] oldBytes = new byte[bytes.length - 1];
+        oldBytes[0] = 1;
+        System.arraycopy(bytes, 2, oldBytes, 1, bytes.length - 2);
+
+        TracedMessage<?> result = (TracedMessage<?>)serialization.deserialize(oldBytes,
+                TracedMessageSerializer.IDENTIFIER, "").get();
+        assertEquals("foo", result.message());
+        assertFalse(result.isLink());
+        assertSameContext(span, result.spanContext());
+    }
+
+    @Test
+    public void testLazyExtraction() {
+        Span span = mockTracer.buildSpan("one").startManual();
+        byte[] bytes = serialization.serialize(TracedMessage.wrap(span, "foo")).get();
+
+        TracedMessage<?> result = (TracedMessage<?>)serialization.deserialize(bytes,
+                TracedMessageSerializer.IDENTIFIER, "").get();
+        assertEquals("foo", result.message());
+        assertEquals(0, extractions.get());
+
+        result.spanContext();
+        result.spanContext();
+        assertEquals(1, extractions.get());
+    }
+
+    @Test
+    public void testByteBuffer() {
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        TracedMessageSerializer serializer = new TracedMessageSerializer((ExtendedActorSystem)system, mockTracer);
+        byte[] payload = new byte[] { 1, 2, 3 };
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        serializer.toBinary(TracedMessage.wrap(span, payload), buffer);
+        buffer.flip();
+
+        TracedMessage<?> result = (TracedMessage<?>)serializer.fromBinary(buffer, "");
+
+        // The transport buffer can be reused right away.
+        Arrays.fill(buffer.array(), (byte)0);
+        assertArrayEquals(payload, (byte[])result.message());
+        assertSameContext(span, result.spanContext());
+    }
+
+    @Test
+    public void testOversizedContext() {
+        MockTracer tracer = new MockTracer(new ThreadLocalScopeManager(), new BinaryPropagator() {
+            @Override
+            public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+                ((ByteBuffer)carrier).put(new byte[TracedMessageSerializer.MAX_CONTEXT_SIZE + 1]);
+            }
+        });
+        TracedMessageSerializer serializer = new TracedMessageSerializer((ExtendedActorSystem)system, tracer);
+
+        Span span = tracer.buildSpan("one").startManual();
+        byte[] bytes = serializer.toBinary(TracedMessage.wrap(span, "foo"));
+
+        // Without a context, the original message is delivered as-is.
+        assertEquals("foo", serializer.fromBinary(bytes, ""));
+    }
+
+    @Test
+    public void testRemoteActor() throws Exception {
+        ActorRef actorRef = system.actorOf(Props.create(ReceiveActor.class, () -> new ReceiveActor()), "one");
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        byte[] bytes = serialization.serialize(TracedMessage.wrap(span, "foo")).get();
+        Object message = serialization.deserialize(bytes, TracedMessageSerializer.IDENTIFIER, "").get();
+        actorRef.tell(message, ActorRef.noSender());
+
+        await().atMost(15, java.util.concurrent.TimeUnit.SECONDS).until(() -> mockTracer.finishedSpans().size(), equalTo(1));
+
+        MockSpan received = mockTracer.finishedSpans().get(0);
+        assertEquals(Constants.RECEIVE_OPERATION_NAME, received.operationName());
+        assertEquals(span.context().traceId(), received.context().traceId());
+        assertEquals(span.context().spanId(), received.parentId());
+    }
+
+    @Test
+    public void testRemoteLink() throws Exception {
+        ActorRef actorRef = system.actorOf(Props.create(ReceiveActor.class, () -> new ReceiveActor()), "one");
+
+        MockSpan span = mockTracer.buildSpan("one").startManual();
+        byte[] bytes = serialization.serialize(TracedMessage.link(span, "foo", 3)).get();
+        Object message = serialization.deserialize(bytes, TracedMessageSerializer.IDENTIFIER, "").get();
+        actorRef.tell(message, ActorRef.noSender());
+
+        await().atMost(15, java.util.concurrent.TimeUnit.SECONDS).until(() -> mockTracer.finishedSpans().size(), equalTo(1));
+
+        // A new trace following from the remote one, one link further down the chain.
+        MockSpan received = mockTracer.finishedSpans().get(0);
+        assertEquals(References.FOLLOWS_FROM, received.references().get(0).getReferenceType());
+        assertEquals(span.context().spanId(), received.references().get(0).getContext().spanId());
+        assertEquals("1", received.getBaggageItem(Constants.CHAIN_DEPTH_BAGGAGE_ITEM));
+    }
+
+    static class ReceiveActor extends TracedAbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchAny(x -> {})
+                .build();
+        }
+    }
+
+    static void assertSameContext(MockSpan span, SpanContext spanContext) {
+        MockSpan.MockContext context = (MockSpan.MockContext)spanContext;
+        assertEquals(span.context().traceId(), context.traceId());
+        assertEquals(span.context().spanId(), context.spanId());
+    }
+}
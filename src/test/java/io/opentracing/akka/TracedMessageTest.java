@@ -1,10 +1,13 @@
 package io.opentracing.akka;
 
+import java.util.Collections;
+
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
 import io.opentracing.util.GlobalTracer;
 import io.opentracing.util.ThreadLocalScopeManager;
 import org.junit.After;
@@ -26,7 +29,7 @@ public class TracedMessageTest {
         GlobalTracer.register(mockTracer);
     }
 
-    @Before
+    @After
     public void after() throws Exception {
         TestUtils.resetGlobalTracer();
     }
@@ -36,6 +39,48 @@ public class TracedMessageTest {
         TracedMessage.wrap(null);
     }
 
+    @Test
+    public void testSamplingPolicy() {
+        Span span = mockTracer.buildSpan("one").start();
+        MessageSamplingPolicy samplingPolicy = new MessageSamplingPolicy(1,
+                Collections.<Class<?>, Double>singletonMap(Integer.class, 0.0));
+
+        assertTrue(TracedMessage.wrap(span, "foo", PropagationPolicy.SKIP_NOOP, samplingPolicy)
+                instanceof TracedMessage);
+        assertEquals(1, TracedMessage.wrap(span, 1, PropagationPolicy.SKIP_NOOP, samplingPolicy));
+    }
+
+    @Test
+    public void testEnqueueTime() {
+        Span span = mockTracer.buildSpan("one").start();
+
+        ActorMetrics.enabled = false;
+        try {
+            assertEquals(0, ((TracedMessage<?>)TracedMessage.wrap(span, "foo")).enqueueTime());
+
+            new ActorMetrics();
+            assertTrue(((TracedMessage<?>)TracedMessage.wrap(span, "foo")).enqueueTime() != 0);
+        } finally {
+            ActorMetrics.enabled = true;
+        }
+    }
+
+    @Test
+    public void testLink() {
+        Span span = mockTracer.buildSpan("one").start();
+
+        TracedMessage<?> message = (TracedMessage<?>)TracedMessage.link(span, "foo", 1);
+        assertTrue(message.isLink());
+        assertNull(message.activeSpan());
+        assertEquals(span.context(), message.spanContext());
+        assertEquals("foo", message.message());
+
+        // Linked up to the maximum depth already.
+        span.setBaggageItem(Constants.CHAIN_DEPTH_BAGGAGE_ITEM, "1");
+        assertEquals("foo", TracedMessage.link(span, "foo", 1));
+        assertEquals("foo", TracedMessage.link(null, "foo", 1));
+    }
+
     @Test
     public void testExplicitNoActiveSpan() {
         String originalMessage = "foo";
@@ -61,7 +106,7 @@ public class TracedMessageTest {
         }
         assertTrue(message instanceof TracedMessage);
 
-        TracedMessage tracedMessage = (TracedMessage)message;
+        TracedMessage<?> tracedMessage = (TracedMessage<?>)message;
         assertEquals(span, tracedMessage.activeSpan());
         assertEquals(originalMessage, tracedMessage.message());
     }
@@ -74,8 +119,34 @@ public class TracedMessageTest {
         Object message = TracedMessage.wrap(span, originalMessage);
         assertTrue(message instanceof TracedMessage);
 
-        TracedMessage tracedMessage = (TracedMessage)message;
+        TracedMessage<?> tracedMessage = (TracedMessage<?>)message;
         assertEquals(span, tracedMessage.activeSpan());
         assertEquals(originalMessage, tracedMessage.message());
     }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullPolicy() {
+        TracedMessage.wrap(mockTracer.buildSpan("one").start(), "foo", null);
+    }
+
+    @Test
+    public void testNoopSpan() {
+        String originalMessage = "foo";
+        Span span = NoopTracerFactory.create().buildSpan("one").start();
+
+        Object message = TracedMessage.wrap(span, originalMessage);
+        assertEquals(originalMessage, message);
+    }
+
+    @Test
+    public void testPolicy() {
+        String originalMessage = "foo";
+        Span span = mockTracer.buildSpan("one").start();
+
+        Object message = TracedMessage.wrap(span, originalMessage, s -> false);
+        assertEquals(originalMessage, message);
+
+        message = TracedMessage.wrap(span, originalMessage, PropagationPolicy.ALWAYS);
+        assertTrue(message instanceof TracedMessage);
+    }
 }
@@ -0,0 +1,140 @@
+package io.opentracing.akka;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.pattern.AskTimeoutException;
+import akka.util.Timeout;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TracedPatternsTest {
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+    ActorSystem system;
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        system = ActorSystem.create("testSystem");
+    }
+
+    @After
+    public void after() throws Exception {
+        system.terminate();
+    }
+
+    static class ReplyTo {
+        final ActorRef replyTo;
+
+        ReplyTo(ActorRef replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    static class ReplyActor extends TracedAbstractActor {
+        public ReplyActor(MockTracer tracer) {
+            super(tracer);
+        }
+
+        public static Props props(MockTracer tracer) {
+            return Props.create(ReplyActor.class, () -> new ReplyActor(tracer));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .matchEquals("fail", x -> getSender().tell(new Status.Failure(new IllegalStateException()), getSelf()))
+                .matchEquals("ignore", x -> {})
+                .match(ReplyTo.class, x -> x.replyTo.tell(tracer().activeSpan(), getSelf()))
+                .matchAny(x -> getSender().tell(tracer().activeSpan(), getSelf()))
+                .build();
+        }
+    }
+
+    @Test
+    public void testAsk() throws Exception {
+        ActorRef actorRef = system.actorOf(ReplyActor.props(mockTracer), "actorOne");
+
+        Object reply = Await.result(TracedPatterns.ask(actorRef, "foo", TestUtils.getDefaultTimeout(), mockTracer),
+                TestUtils.getDefaultDuration());
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+
+        // The actor runs under the client Span.
+        MockSpan span = mockTracer.finishedSpans().get(0);
+        assertEquals(span, reply);
+        assertEquals(Constants.ASK_OPERATION_NAME, span.operationName());
+        assertEquals(Tags.SPAN_KIND_CLIENT, span.tags().get(Tags.SPAN_KIND.getKey()));
+        assertEquals(actorRef.path().toString(), span.tags().get(Constants.ACTOR_PATH));
+        assertEquals(Constants.ASK_SENT_EVENT, span.logEntries().get(0).fields().get("event"));
+        assertNull(span.tags().get(Tags.ERROR.getKey()));
+    }
+
+    @Test
+    public void testAskWithReplyTo() throws Exception {
+        ActorRef actorRef = system.actorOf(ReplyActor.props(mockTracer), "actorOne");
+
+        Object reply = Await.result(TracedPatterns.askWithReplyTo(actorRef, replyTo -> new ReplyTo(replyTo),
+                    TestUtils.getDefaultTimeout(), mockTracer), TestUtils.getDefaultDuration());
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+        assertEquals(mockTracer.finishedSpans().get(0), reply);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        ActorRef actorRef = system.actorOf(ReplyActor.props(mockTracer), "actorOne");
+
+        try {
+            Await.result(TracedPatterns.ask(actorRef, "ignore", new Timeout(Duration.create(50, "millis")), mockTracer),
+                    TestUtils.getDefaultDuration());
+            fail();
+        } catch (AskTimeoutException e) {
+        }
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+
+        MockSpan span = mockTracer.finishedSpans().get(0);
+        assertEquals(true, span.tags().get(Constants.ASK_TIMED_OUT));
+        assertEquals(true, span.tags().get(Tags.ERROR.getKey()));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ActorRef actorRef = system.actorOf(ReplyActor.props(mockTracer), "actorOne");
+
+        try {
+            Await.result(TracedPatterns.ask(actorRef, "fail", TestUtils.getDefaultTimeout(), mockTracer),
+                    TestUtils.getDefaultDuration());
+            fail();
+        } catch (IllegalStateException e) {
+        }
+
+        await().atMost(TestUtils.DEFAULT_CALLBACK_SYNC_TIMEOUT, TimeUnit.SECONDS)
+            .until(() -> mockTracer.finishedSpans().size() == 1);
+
+        MockSpan span = mockTracer.finishedSpans().get(0);
+        assertNull(span.tags().get(Constants.ASK_TIMED_OUT));
+        assertEquals(true, span.tags().get(Tags.ERROR.getKey()));
+        assertTrue(span.logEntries().get(1).fields().get("error.object") instanceof IllegalStateException);
+    }
+}
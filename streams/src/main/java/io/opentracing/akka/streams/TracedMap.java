@@ -0,0 +1,140 @@
+package io.opentracing.akka.streams;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.NotUsed;
+import akka.japi.function.Function;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.javadsl.Flow;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+import scala.concurrent.duration.FiniteDuration;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.akka.ElementSpanBatcher;
+import io.opentracing.akka.TracedMessage;
+
+/**
+ * Map stage running its function with the Span of the batch of the current element active,
+ * as built by an {@link ElementSpanBatcher} per materialization: one Span per number of
+ * consecutive elements and/or per time window, child of the SpanContext carried by
+ * {@link TracedMessage} elements, if any. Elements are passed as they are (not unwrapped).
+ *
+ * Being a regular {@link GraphStage}, it is fused with its neighbours. When batching by time,
+ * the current batch is also finished once its window elapses, even if no other element arrives.
+ */
+public final class TracedMap<A, B> extends GraphStage<FlowShape<A, B>> {
+    final Inlet<A> in = Inlet.create("TracedMap.in");
+    final Outlet<B> out = Outlet.create("TracedMap.out");
+    final FlowShape<A, B> shape = FlowShape.of(in, out);
+
+    final Tracer tracer;
+    final String operationName;
+    final int maxElements;
+    final long windowNanos;
+    final Function<A, B> f;
+
+    public TracedMap(Tracer tracer, String operationName, int maxElements, Function<A, B> f) {
+        this(tracer, operationName, maxElements, 0, TimeUnit.NANOSECONDS, f);
+    }
+
+    /**
+     * @param maxElements elements per batch, or 0 for no limit.
+     * @param window      duration of each batch, or 0 for no limit.
+     */
+    public TracedMap(Tracer tracer, String operationName, int maxElements, long window, TimeUnit unit,
+            Function<A, B> f) {
+        if (f == null)
+            throw new IllegalArgumentException("f");
+
+        // Validates the batching arguments upfront, instead of upon materialization.
+        new ElementSpanBatcher(tracer, operationName, maxElements, window, unit);
+
+        this.tracer = tracer;
+        this.operationName = operationName;
+        this.maxElements = maxElements;
+        this.windowNanos = unit.toNanos(window);
+        this.f = f;
+    }
+
+    public static <A, B> Flow<A, B, NotUsed> flow(Tracer tracer, String operationName, int maxElements,
+            Function<A, B> f) {
+        return Flow.fromGraph(new TracedMap<A, B>(tracer, operationName, maxElements, f));
+    }
+
+    public static <A, B> Flow<A, B, NotUsed> flow(Tracer tracer, String operationName, int maxElements,
+            long window, TimeUnit unit, Function<A, B> f) {
+        return Flow.fromGraph(new TracedMap<A, B>(tracer, operationName, maxElements, window, unit, f));
+    }
+
+    @Override
+    public FlowShape<A, B> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        return new TimerGraphStageLogic(shape) {
+            final ElementSpanBatcher batcher = new ElementSpanBatcher(tracer, operationName, maxElements,
+                    windowNanos, TimeUnit.NANOSECONDS);
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() throws Exception {
+                        A element = grab(in);
+                        Span previous = batcher.span();
+
+                        B result;
+                        try (Scope scope = batcher.activate(element)) {
+                            result = f.apply(element);
+                        }
+
+                        // A single timer is kept, replaced whenever a new batch starts.
+                        if (windowNanos != 0 && batcher.span() != previous)
+                            scheduleOnce(FlushBatch.INSTANCE, FiniteDuration.create(windowNanos, TimeUnit.NANOSECONDS));
+
+                        push(out, result);
+                    }
+                });
+
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        pull(in);
+                    }
+                });
+            }
+
+            @Override
+            public void onTimer(Object timerKey) {
+                batcher.finish();
+            }
+
+            @Override
+            public void postStop() {
+                batcher.finish();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "TracedMap(" + operationName + ")";
+    }
+
+    static final class FlushBatch {
+        static final FlushBatch INSTANCE = new FlushBatch();
+
+        private FlushBatch() {
+        }
+    }
+}
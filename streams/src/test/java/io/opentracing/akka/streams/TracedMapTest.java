@@ -0,0 +1,93 @@
+package io.opentracing.akka.streams;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.opentracing.Span;
+import io.opentracing.akka.Constants;
+import io.opentracing.akka.TracedMessage;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TracedMapTest {
+    final MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager());
+    ActorSystem system;
+    Materializer materializer;
+
+    @Before
+    public void before() throws Exception {
+        mockTracer.reset();
+        system = ActorSystem.create("testSystem");
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @After
+    public void after() throws Exception {
+        system.terminate();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIllegalBatching() throws Exception {
+        new TracedMap<Integer, Integer>(mockTracer, "map", 0, x -> x);
+    }
+
+    @Test
+    public void testBatchPerElements() throws Exception {
+        List<Span> active = Source.range(1, 10)
+            .via(TracedMap.flow(mockTracer, "map", 4, x -> mockTracer.activeSpan()))
+            .runWith(Sink.seq(), materializer)
+            .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(3, spans.size());
+        assertEquals(4, spans.get(0).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals(4, spans.get(1).tags().get(Constants.STREAM_ELEMENTS));
+        assertEquals(2, spans.get(2).tags().get(Constants.STREAM_ELEMENTS));
+
+        assertEquals(spans.get(0), active.get(0));
+        assertEquals(spans.get(0), active.get(3));
+        assertEquals(spans.get(1), active.get(4));
+        assertEquals(spans.get(2), active.get(9));
+    }
+
+    @Test
+    public void testParent() throws Exception {
+        Span parent = mockTracer.buildSpan("parent").startManual();
+        Source.from(Arrays.asList(TracedMessage.wrap(parent, "one"), TracedMessage.wrap(parent, "two")))
+            .via(TracedMap.flow(mockTracer, "map", 10, x -> ((TracedMessage<?>)x).message()))
+            .runWith(Sink.seq(), materializer)
+            .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        assertEquals(1, spans.size());
+        assertEquals(((MockSpan)parent).context().spanId(), spans.get(0).parentId());
+        assertEquals(2, spans.get(0).tags().get(Constants.STREAM_ELEMENTS));
+    }
+
+    @Test
+    public void testWindowElapsed() throws Exception {
+        // The stream is kept open, so only the window timer can finish the batch.
+        Source.single(1).concat(Source.maybe())
+            .via(TracedMap.flow(mockTracer, "map", 0, 100, TimeUnit.MILLISECONDS, x -> x))
+            .runWith(Sink.ignore(), materializer);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mockTracer.finishedSpans().isEmpty() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(1, mockTracer.finishedSpans().size());
+        assertEquals(1, mockTracer.finishedSpans().get(0).tags().get(Constants.STREAM_ELEMENTS));
+    }
+}